@@ -0,0 +1,125 @@
+package se.bjurr.prnfb.benchmark;
+
+import static com.atlassian.bitbucket.pull.PullRequestAction.OPENED;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySet;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+import static se.bjurr.prnfb.http.DeliveryMetrics.deliveryMetrics;
+import static se.bjurr.prnfb.http.DeliveryScheduler.deliveryScheduler;
+import static se.bjurr.prnfb.settings.PrnfbNotificationBuilder.prnfbNotificationBuilder;
+import static se.bjurr.prnfb.settings.PrnfbSettingsDataBuilder.prnfbSettingsDataBuilder;
+
+import com.atlassian.bitbucket.auth.AuthenticationContext;
+import com.atlassian.bitbucket.event.pull.PullRequestOpenedEvent;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestService;
+import com.atlassian.bitbucket.repository.RepositoryService;
+import com.atlassian.bitbucket.scm.ScmService;
+import com.atlassian.bitbucket.server.ApplicationPropertiesService;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import com.atlassian.bitbucket.user.SecurityService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import se.bjurr.prnfb.http.DeliveryScheduler;
+import se.bjurr.prnfb.listener.FakeExecutorService;
+import se.bjurr.prnfb.listener.PrnfbPullRequestAction;
+import se.bjurr.prnfb.listener.PrnfbPullRequestEventListener;
+import se.bjurr.prnfb.service.MockedEscalatedSecurityContext;
+import se.bjurr.prnfb.service.PrnfbRendererFactory;
+import se.bjurr.prnfb.service.PrnfbVariable;
+import se.bjurr.prnfb.service.RetryService;
+import se.bjurr.prnfb.service.SettingsService;
+import se.bjurr.prnfb.settings.PrnfbNotification;
+import se.bjurr.prnfb.settings.ValidationException;
+
+/**
+ * Cost of handling one pull request event, from the event to every notification being invoked.
+ * Everything runs on the calling thread and the HTTP requests are not sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventDispatchBenchmark {
+
+  /** Notifications triggered by the event. */
+  @Param({"1", "10", "100"})
+  private int notifications;
+
+  private PullRequestOpenedEvent event;
+  private PrnfbPullRequestEventListener listener;
+
+  @Setup
+  public void setup() throws ValidationException {
+    final SecurityService securityService = Fixtures.stub(SecurityService.class);
+    when(securityService.withPermission(any(), any()))
+        .thenReturn(new MockedEscalatedSecurityContext());
+    final ExecutorService executorService = new FakeExecutorService();
+
+    final List<PrnfbNotification> candidates = new ArrayList<>();
+    for (int i = 0; i < notifications; i++) {
+      candidates.add(
+          prnfbNotificationBuilder() //
+              .withName("Notification " + i) //
+              .withUrl(Fixtures.URL + "&N=" + i) //
+              .withTrigger(PrnfbPullRequestAction.OPENED) //
+              .withPostContent(Fixtures.POST_CONTENT) //
+              .build());
+    }
+    final SettingsService settingsService = Fixtures.stub(SettingsService.class);
+    when(settingsService.getPrnfbSettingsData()).thenReturn(prnfbSettingsDataBuilder().build());
+    when(settingsService.getNotificationCandidates(anySet(), anyString(), anyString()))
+        .thenReturn(candidates);
+
+    final PrnfbRendererFactory rendererFactory =
+        new PrnfbRendererFactory(
+            Fixtures.stub(RepositoryService.class),
+            Fixtures.stub(ApplicationPropertiesService.class),
+            Fixtures.stub(AuthenticationContext.class),
+            securityService);
+    final DeliveryScheduler deliveryScheduler = deliveryScheduler(settingsService, executorService);
+    listener =
+        new PrnfbPullRequestEventListener(
+            rendererFactory,
+            Fixtures.stub(PullRequestService.class),
+            executorService,
+            settingsService,
+            securityService,
+            Fixtures.stub(ScmService.class),
+            deliveryScheduler,
+            Fixtures.stub(RetryService.class),
+            deliveryMetrics(deliveryScheduler));
+    PrnfbPullRequestEventListener.setInvoker(Fixtures.okInvoker());
+    PrnfbVariable.setInvoker(Fixtures.okInvoker());
+
+    final PullRequest pullRequest = Fixtures.pullRequest();
+    final ApplicationUser user = Fixtures.user("user");
+    event = Fixtures.stub(PullRequestOpenedEvent.class);
+    when(event.getPullRequest()).thenReturn(pullRequest);
+    when(event.getAction()).thenReturn(OPENED);
+    when(event.getUser()).thenReturn(user);
+  }
+
+  @TearDown
+  public void tearDown() {
+    listener.shutdown();
+    PrnfbPullRequestEventListener.setInvoker(null);
+    PrnfbVariable.setInvoker(null);
+  }
+
+  @Benchmark
+  public void handleEvent() {
+    listener.handleEventAsync(event);
+  }
+}
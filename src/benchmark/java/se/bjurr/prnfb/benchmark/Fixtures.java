@@ -0,0 +1,131 @@
+package se.bjurr.prnfb.benchmark;
+
+import static com.atlassian.bitbucket.pull.PullRequestState.OPEN;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.atlassian.bitbucket.project.Project;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestParticipant;
+import com.atlassian.bitbucket.pull.PullRequestRef;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import java.net.URI;
+import java.net.URISyntaxException;
+import se.bjurr.prnfb.http.HttpResponse;
+import se.bjurr.prnfb.http.Invoker;
+import se.bjurr.prnfb.http.UrlInvoker;
+
+/**
+ * Mocked pull request, like the one in the unit tests. The mocks do not record invocations, so
+ * that memory does not grow with the number of iterations.
+ */
+class Fixtures {
+
+  /** A typical post content, like those in the integration guides. */
+  static final String POST_CONTENT =
+      "{\n"
+          + "  \"id\": \"${PULL_REQUEST_ID}\",\n"
+          + "  \"version\": \"${PULL_REQUEST_VERSION}\",\n"
+          + "  \"action\": \"${PULL_REQUEST_ACTION}\",\n"
+          + "  \"state\": \"${PULL_REQUEST_STATE}\",\n"
+          + "  \"title\": \"${PULL_REQUEST_TITLE}\",\n"
+          + "  \"description\": \"${PULL_REQUEST_DESCRIPTION}\",\n"
+          + "  \"author\": {\n"
+          + "    \"name\": \"${PULL_REQUEST_AUTHOR_NAME}\",\n"
+          + "    \"email\": \"${PULL_REQUEST_AUTHOR_EMAIL}\"\n"
+          + "  },\n"
+          + "  \"user\": \"${PULL_REQUEST_USER_NAME}\",\n"
+          + "  \"from\": {\n"
+          + "    \"branch\": \"${PULL_REQUEST_FROM_BRANCH}\",\n"
+          + "    \"hash\": \"${PULL_REQUEST_FROM_HASH}\",\n"
+          + "    \"project\": \"${PULL_REQUEST_FROM_REPO_PROJECT_KEY}\",\n"
+          + "    \"repository\": \"${PULL_REQUEST_FROM_REPO_SLUG}\"\n"
+          + "  },\n"
+          + "  \"to\": {\n"
+          + "    \"branch\": \"${PULL_REQUEST_TO_BRANCH}\",\n"
+          + "    \"hash\": \"${PULL_REQUEST_TO_HASH}\",\n"
+          + "    \"project\": \"${PULL_REQUEST_TO_REPO_PROJECT_KEY}\",\n"
+          + "    \"repository\": \"${PULL_REQUEST_TO_REPO_SLUG}\"\n"
+          + "  }\n"
+          + "}";
+
+  static final String URL =
+      "http://jenkins.example.com/job/build/buildWithParameters"
+          + "?FROM=${PULL_REQUEST_FROM_HASH}&TO=${PULL_REQUEST_TO_HASH}&ID=${PULL_REQUEST_ID}";
+
+  static final String DESCRIPTION =
+      "Fixes the \"flaky\" retry of deliveries.\n\n"
+          + "* Backs off exponentially\n"
+          + "* Logs <b>once</b> per destination\n"
+          + "* Handles 'Retry-After' & keeps order\n";
+
+  static <T> T stub(Class<T> type) {
+    return mock(type, withSettings().stubOnly());
+  }
+
+  static ApplicationUser user(String name) {
+    final ApplicationUser user = stub(ApplicationUser.class);
+    when(user.getName()).thenReturn(name);
+    when(user.getSlug()).thenReturn(name);
+    when(user.getDisplayName()).thenReturn("Display " + name);
+    when(user.getEmailAddress()).thenReturn(name + "@example.com");
+    return user;
+  }
+
+  static PullRequest pullRequest() {
+    final Project project = stub(Project.class);
+    when(project.getKey()).thenReturn("PROJ");
+    when(project.getId()).thenReturn(1);
+    final Repository repository = stub(Repository.class);
+    when(repository.getSlug()).thenReturn("repository");
+    when(repository.getName()).thenReturn("Repository");
+    when(repository.getId()).thenReturn(2);
+    when(repository.getProject()).thenReturn(project);
+
+    final PullRequestRef fromRef = stub(PullRequestRef.class);
+    when(fromRef.getId()).thenReturn("refs/heads/feature/retries");
+    when(fromRef.getDisplayId()).thenReturn("feature/retries");
+    when(fromRef.getLatestCommit()).thenReturn("0a1b2c3d4e5f60718293a4b5c6d7e8f901234567");
+    when(fromRef.getRepository()).thenReturn(repository);
+    final PullRequestRef toRef = stub(PullRequestRef.class);
+    when(toRef.getId()).thenReturn("refs/heads/master");
+    when(toRef.getDisplayId()).thenReturn("master");
+    when(toRef.getLatestCommit()).thenReturn("76543210fedcba9876543210fedcba9876543210");
+    when(toRef.getRepository()).thenReturn(repository);
+
+    final ApplicationUser authorUser = user("author");
+    final PullRequestParticipant author = stub(PullRequestParticipant.class);
+    when(author.getUser()).thenReturn(authorUser);
+
+    final PullRequest pullRequest = stub(PullRequest.class);
+    when(pullRequest.getId()).thenReturn(3L);
+    when(pullRequest.getVersion()).thenReturn(4);
+    when(pullRequest.getState()).thenReturn(OPEN);
+    when(pullRequest.isOpen()).thenReturn(true);
+    when(pullRequest.getTitle()).thenReturn("Retry deliveries with backoff");
+    when(pullRequest.getDescription()).thenReturn(DESCRIPTION);
+    when(pullRequest.getAuthor()).thenReturn(author);
+    when(pullRequest.getFromRef()).thenReturn(fromRef);
+    when(pullRequest.getToRef()).thenReturn(toRef);
+    return pullRequest;
+  }
+
+  /** Answers every request with 200, without any network. */
+  static Invoker okInvoker() {
+    return new Invoker() {
+      @Override
+      public HttpResponse invoke(UrlInvoker urlInvoker) {
+        try {
+          final HttpResponse response =
+              new HttpResponse(new URI(urlInvoker.getUrlParam()), 200, "");
+          urlInvoker.setResponse(response);
+          return response;
+        } catch (final URISyntaxException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+}
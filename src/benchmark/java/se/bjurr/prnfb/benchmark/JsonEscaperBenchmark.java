@@ -0,0 +1,49 @@
+package se.bjurr.prnfb.benchmark;
+
+import static se.bjurr.prnfb.service.JsonEscaper.jsonEscape;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Escaping of resolved variables, done for every variable in a JSON post content. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonEscaperBenchmark {
+
+  /** From a branch name up to a long pull request description. */
+  @Param({"32", "1024", "16384"})
+  private int length;
+
+  private String plain;
+  private String special;
+
+  @Setup
+  public void setup() {
+    final StringBuilder plainBuilder = new StringBuilder();
+    final StringBuilder specialBuilder = new StringBuilder();
+    while (plainBuilder.length() < length) {
+      plainBuilder.append("feature/retry-deliveries-");
+      specialBuilder.append(Fixtures.DESCRIPTION).append("åäö   ");
+    }
+    plain = plainBuilder.substring(0, length);
+    special = specialBuilder.substring(0, length);
+  }
+
+  @Benchmark
+  public String escapePlain() {
+    return jsonEscape(plain);
+  }
+
+  @Benchmark
+  public String escapeSpecial() {
+    return jsonEscape(special);
+  }
+}
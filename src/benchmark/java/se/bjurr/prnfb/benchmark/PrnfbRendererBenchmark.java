@@ -0,0 +1,95 @@
+package se.bjurr.prnfb.benchmark;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.OPENED;
+import static se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR.JSON;
+import static se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR.URL;
+import static se.bjurr.prnfb.settings.PrnfbNotificationBuilder.prnfbNotificationBuilder;
+
+import com.atlassian.bitbucket.auth.AuthenticationContext;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.repository.RepositoryService;
+import com.atlassian.bitbucket.server.ApplicationPropertiesService;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import com.atlassian.bitbucket.user.SecurityService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.bjurr.prnfb.service.MockedEscalatedSecurityContext;
+import se.bjurr.prnfb.service.PrnfbRendererFactory;
+import se.bjurr.prnfb.service.PrnfbVariable;
+import se.bjurr.prnfb.service.VariablesContext;
+import se.bjurr.prnfb.service.VariablesContext.VariablesContextBuilder;
+import se.bjurr.prnfb.settings.PrnfbNotification;
+import se.bjurr.prnfb.settings.ValidationException;
+
+/**
+ * Rendering of a notification. A new {@link VariablesContext} resolves every {@link PrnfbVariable},
+ * a shared one is what the second and later notifications of an event get.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrnfbRendererBenchmark {
+
+  private PrnfbRendererFactory factory;
+  private PrnfbNotification notification;
+  private PullRequest pullRequest;
+  private VariablesContext sharedVariables;
+  private ApplicationUser user;
+
+  @Setup
+  public void setup() throws ValidationException {
+    final SecurityService securityService = Fixtures.stub(SecurityService.class);
+    when(securityService.withPermission(any(), any()))
+        .thenReturn(new MockedEscalatedSecurityContext());
+    factory =
+        new PrnfbRendererFactory(
+            Fixtures.stub(RepositoryService.class),
+            Fixtures.stub(ApplicationPropertiesService.class),
+            Fixtures.stub(AuthenticationContext.class),
+            securityService);
+    notification =
+        prnfbNotificationBuilder() //
+            .withUrl(Fixtures.URL) //
+            .withTrigger(OPENED) //
+            .withPostContent(Fixtures.POST_CONTENT) //
+            .build();
+    pullRequest = Fixtures.pullRequest();
+    sharedVariables = new VariablesContextBuilder().build();
+    user = Fixtures.user("user");
+  }
+
+  @Benchmark
+  public String renderPostContent() {
+    return factory
+        .create(pullRequest, OPENED, notification, new VariablesContextBuilder().build(), user)
+        .render(Fixtures.POST_CONTENT, JSON, null, false);
+  }
+
+  @Benchmark
+  public String renderPostContentWithSharedVariables() {
+    return factory
+        .create(pullRequest, OPENED, notification, sharedVariables, user)
+        .render(Fixtures.POST_CONTENT, JSON, null, false);
+  }
+
+  @Benchmark
+  public String renderUrl() {
+    return factory
+        .create(pullRequest, OPENED, notification, new VariablesContextBuilder().build(), user)
+        .render(Fixtures.URL, URL, null, false);
+  }
+
+  @Benchmark
+  public String resolveVariable() {
+    return PrnfbVariable.PULL_REQUEST_TO_REPO_PROJECT_KEY.resolve(
+        pullRequest, OPENED, user, null, null, notification, null, null, false, null);
+  }
+}
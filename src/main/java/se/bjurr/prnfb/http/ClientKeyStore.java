@@ -1,12 +1,15 @@
 package se.bjurr.prnfb.http;
 
 import static com.google.common.base.Optional.fromNullable;
+import static java.util.Arrays.asList;
 
 import com.google.common.base.Optional;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.util.List;
 import se.bjurr.prnfb.settings.PrnfbSettingsData;
 
 /**
@@ -17,10 +20,46 @@ import se.bjurr.prnfb.settings.PrnfbSettingsData;
  */
 public class ClientKeyStore {
 
+  private static volatile ClientKeyStore cached = null;
+
+  /**
+   * The keystore of the settings. It is shared, and only loaded again when the keystore settings
+   * change or the file is modified, so that the file is not parsed for every event.
+   */
+  public static ClientKeyStore clientKeyStore(PrnfbSettingsData settings) {
+    final List<Object> key = keyOf(settings);
+    final ClientKeyStore current = cached;
+    if (current != null && current.key.equals(key)) {
+      return current;
+    }
+    final ClientKeyStore loaded = new ClientKeyStore(settings, key);
+    cached = loaded;
+    return loaded;
+  }
+
+  private static List<Object> keyOf(PrnfbSettingsData settings) {
+    if (!settings.getKeyStore().isPresent()) {
+      return asList();
+    }
+    File keyStoreFile = new File(settings.getKeyStore().get());
+    return asList(
+        keyStoreFile.getAbsolutePath(),
+        keyStoreFile.lastModified(),
+        keyStoreFile.length(),
+        settings.getKeyStoreType(),
+        settings.getKeyStorePassword().orNull());
+  }
+
+  private final List<Object> key;
   private KeyStore keyStore = null;
   private char[] password = null;
 
   public ClientKeyStore(PrnfbSettingsData settings) {
+    this(settings, keyOf(settings));
+  }
+
+  private ClientKeyStore(PrnfbSettingsData settings, List<Object> key) {
+    this.key = key;
     if (settings.getKeyStore().isPresent()) {
       File keyStoreFile = new File(settings.getKeyStore().get());
       try {
@@ -30,7 +69,9 @@ public class ClientKeyStore {
           this.password = settings.getKeyStorePassword().get().toCharArray();
         }
 
-        this.keyStore.load(new FileInputStream(keyStoreFile), this.password);
+        try (InputStream keyStoreStream = new FileInputStream(keyStoreFile)) {
+          this.keyStore.load(keyStoreStream, this.password);
+        }
       } catch (Exception e) {
         throw new RuntimeException(
             "Unable to build keystore from " + keyStoreFile.getAbsolutePath(), e);
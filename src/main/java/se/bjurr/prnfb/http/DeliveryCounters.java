@@ -0,0 +1,72 @@
+package se.bjurr.prnfb.http;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Outcomes of the deliveries of one notification, or to one destination. */
+public class DeliveryCounters {
+  private final String name;
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public DeliveryCounters(final String name) {
+    this.name = name;
+  }
+
+  void started() {
+    inFlight.incrementAndGet();
+  }
+
+  void finished() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * @param response Null if there was an error.
+   * @param cause Null if the delivery was sent.
+   */
+  void record(final HttpResponse response, final Throwable cause) {
+    if (cause instanceof RejectedExecutionException || cause instanceof CancellationException) {
+      rejected.increment();
+    } else if (cause != null || response == null) {
+      errors.increment();
+    } else if (200 <= response.getStatus() && response.getStatus() <= 299) {
+      delivered.increment();
+    } else {
+      failed.increment();
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** @return Deliveries answered with 2xx. */
+  public long getDelivered() {
+    return delivered.sum();
+  }
+
+  /** @return Deliveries answered with anything but 2xx. */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  /** @return Deliveries that got no answer. */
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  /** @return Deliveries that were not sent because the queue was full or the plugin disabled. */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+}
@@ -0,0 +1,168 @@
+package se.bjurr.prnfb.http;
+
+import static org.slf4j.LoggerFactory.getLogger;
+import static se.bjurr.prnfb.service.PrnfbPlugin.isThisPlugin;
+
+import com.atlassian.event.api.EventListener;
+import com.atlassian.plugin.event.events.PluginDisablingEvent;
+import com.google.common.annotations.VisibleForTesting;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import se.bjurr.prnfb.settings.PrnfbNotification;
+
+/**
+ * Counts deliveries per notification and per destination, and records how long each step takes.
+ * Available as an MXBean and from the REST resource {@code /metrics}, so that it can be told
+ * whether slow deliveries are spent in the plugin or waiting for the destination.
+ */
+public class DeliveryMetrics implements DeliveryMetricsMXBean {
+  private static final Logger LOG = getLogger(DeliveryMetrics.class);
+
+  public static final String OBJECT_NAME = "se.bjurr.prnfb:type=DeliveryMetrics";
+
+  private final Map<String, DeliveryCounters> hosts = new ConcurrentHashMap<>();
+  private final Map<String, DeliveryCounters> notifications = new ConcurrentHashMap<>();
+  private final LatencyHistogram renderTime = new LatencyHistogram();
+  private final LatencyHistogram queueWait = new LatencyHistogram();
+  private final LatencyHistogram connectTime = new LatencyHistogram();
+  private final LatencyHistogram responseTime = new LatencyHistogram();
+  private final DeliveryScheduler deliveryScheduler;
+
+  private volatile boolean registered = false;
+
+  public DeliveryMetrics(final DeliveryScheduler deliveryScheduler) {
+    this(deliveryScheduler, true);
+  }
+
+  private DeliveryMetrics(final DeliveryScheduler deliveryScheduler, final boolean register) {
+    this.deliveryScheduler = deliveryScheduler;
+    if (register) {
+      register();
+    }
+  }
+
+  /** Not a constructor, so that tests do not register the MXBean. */
+  @VisibleForTesting
+  public static DeliveryMetrics deliveryMetrics(final DeliveryScheduler deliveryScheduler) {
+    return new DeliveryMetrics(deliveryScheduler, false);
+  }
+
+  private void register() {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        // Left by an earlier instance of the plugin
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+      registered = true;
+    } catch (final Exception e) {
+      LOG.warn("Unable to register " + OBJECT_NAME, e);
+    }
+  }
+
+  @EventListener
+  public void onPluginDisabling(final PluginDisablingEvent event) {
+    if (!registered || !isThisPlugin(event)) {
+      return;
+    }
+    registered = false;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+    } catch (final Exception e) {
+      LOG.warn("Unable to unregister " + OBJECT_NAME, e);
+    }
+  }
+
+  private DeliveryCounters host(final String destination) {
+    return hosts.computeIfAbsent(destination, DeliveryCounters::new);
+  }
+
+  private DeliveryCounters notification(final PrnfbNotification notification) {
+    return notifications.computeIfAbsent(
+        notification.getUuid().toString(), uuid -> new DeliveryCounters(notification.getName()));
+  }
+
+  public void recordRenderTime(final long nanos) {
+    renderTime.record(nanos);
+  }
+
+  public void recordQueueWait(final long nanos) {
+    queueWait.record(nanos);
+  }
+
+  public void deliveryStarted(final String destination) {
+    host(destination).started();
+  }
+
+  /** @param response Null if there was an error. */
+  public void deliveryFinished(final String destination, final HttpResponse response) {
+    host(destination).finished();
+    if (response != null && response.getConnectNanos() >= 0) {
+      connectTime.record(response.getConnectNanos());
+      responseTime.record(response.getResponseNanos());
+    }
+  }
+
+  /**
+   * @param response Null if the delivery was not sent, or there was an error.
+   * @param e Null if the delivery was sent.
+   */
+  public void recordOutcome(
+      final PrnfbNotification notification,
+      final String destination,
+      final HttpResponse response,
+      final Throwable e) {
+    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+    host(destination).record(response, cause);
+    notification(notification).record(response, cause);
+  }
+
+  @Override
+  public Map<String, Integer> getQueued() {
+    return deliveryScheduler.getQueued();
+  }
+
+  @Override
+  public Map<String, DeliveryCounters> getHosts() {
+    return new TreeMap<>(hosts);
+  }
+
+  @Override
+  public Map<String, PoolStats> getConnections() {
+    return HttpUtil.getConnectionStats();
+  }
+
+  @Override
+  public Map<String, DeliveryCounters> getNotifications() {
+    return new TreeMap<>(notifications);
+  }
+
+  @Override
+  public LatencyHistogram getRenderTime() {
+    return renderTime;
+  }
+
+  @Override
+  public LatencyHistogram getQueueWait() {
+    return queueWait;
+  }
+
+  @Override
+  public LatencyHistogram getConnectTime() {
+    return connectTime;
+  }
+
+  @Override
+  public LatencyHistogram getResponseTime() {
+    return responseTime;
+  }
+}
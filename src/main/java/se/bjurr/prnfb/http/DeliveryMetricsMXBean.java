@@ -0,0 +1,31 @@
+package se.bjurr.prnfb.http;
+
+import java.util.Map;
+import org.apache.http.pool.PoolStats;
+
+/** Registered as {@value DeliveryMetrics#OBJECT_NAME}. */
+public interface DeliveryMetricsMXBean {
+
+  /** @return Number of queued deliveries per destination, only destinations that have any. */
+  Map<String, Integer> getQueued();
+
+  Map<String, DeliveryCounters> getHosts();
+
+  /** @return Connection pool usage per route, a route is a host and the proxy used, if any. */
+  Map<String, PoolStats> getConnections();
+
+  /** @return Counters keyed by notification UUID. */
+  Map<String, DeliveryCounters> getNotifications();
+
+  /** @return Time to filter and render a notification that is sent. */
+  LatencyHistogram getRenderTime();
+
+  /** @return Time from queued until a worker starts the delivery. */
+  LatencyHistogram getQueueWait();
+
+  /** @return Time to get a connection, pooled or new, before the request is sent. */
+  LatencyHistogram getConnectTime();
+
+  /** @return Time from the request was sent until the response was read. */
+  LatencyHistogram getResponseTime();
+}
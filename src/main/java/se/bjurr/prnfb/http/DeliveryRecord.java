@@ -0,0 +1,117 @@
+package se.bjurr.prnfb.http;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import org.apache.http.HttpHost;
+
+/**
+ * One request sent by {@link HttpUtil}. Only numbers and references that the request already has
+ * are stored, the texts of the HTTP tracing page are made when the page is shown.
+ * <br>
+ * <br>
+ * Immutable, a completed request is a new record, so the page never shows a half updated one.
+ */
+public class DeliveryRecord {
+  private static final DateTimeFormatter TIMESTAMP =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ").withZone(ZoneId.systemDefault());
+  private static final String NONE = "-";
+
+  /** @return The time as shown on the admin pages. */
+  public static String formatTimestamp(final long epochMillis) {
+    return TIMESTAMP.format(Instant.ofEpochMilli(epochMillis));
+  }
+
+  private final long startMillis;
+  private final String method;
+  private final long uploaded;
+  private final URI uri;
+  private final HttpHost proxy;
+  private final long elapsedMillis;
+  private final int status;
+  private final long downloaded;
+  private final Throwable error;
+
+  /**
+   * @param uploaded Length of the request body, -1 if there is none or it is unknown.
+   * @param proxy Null if no proxy is used.
+   */
+  public DeliveryRecord(
+      final long startMillis,
+      final String method,
+      final long uploaded,
+      final URI uri,
+      final HttpHost proxy) {
+    this(startMillis, method, uploaded, uri, proxy, -1, -1, -1, null);
+  }
+
+  private DeliveryRecord(
+      final long startMillis,
+      final String method,
+      final long uploaded,
+      final URI uri,
+      final HttpHost proxy,
+      final long elapsedMillis,
+      final int status,
+      final long downloaded,
+      final Throwable error) {
+    this.startMillis = startMillis;
+    this.method = method;
+    this.uploaded = uploaded;
+    this.uri = uri;
+    this.proxy = proxy;
+    this.elapsedMillis = elapsedMillis;
+    this.status = status;
+    this.downloaded = downloaded;
+    this.error = error;
+  }
+
+  /** @return This request, completed with a response. */
+  DeliveryRecord responded(final long elapsedMillis, final int status, final long downloaded) {
+    return new DeliveryRecord(
+        startMillis, method, uploaded, uri, proxy, elapsedMillis, status, downloaded, null);
+  }
+
+  /** @return This request, completed without a response. */
+  DeliveryRecord failed(final long elapsedMillis, final Throwable error) {
+    return new DeliveryRecord(
+        startMillis, method, uploaded, uri, proxy, elapsedMillis, -1, -1, error);
+  }
+
+  public long getStartMillis() {
+    return startMillis;
+  }
+
+  /** @return -1 while in flight. */
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /** @return -1 while in flight or if there was an error. */
+  public int getStatus() {
+    return status;
+  }
+
+  public Throwable getError() {
+    return error;
+  }
+
+  /**
+   * @return Timestamp, elapsed, status, method, uploaded, URL, downloaded, proxy and error, as
+   *     shown on the HTTP tracing page.
+   */
+  public String[] toRow() {
+    return new String[] {
+      formatTimestamp(startMillis),
+      elapsedMillis == -1 ? NONE : elapsedMillis + "ms",
+      error != null ? "ERR" : status == -1 ? NONE : Integer.toString(status),
+      method,
+      Long.toString(uploaded),
+      uri.toString(),
+      downloaded == -1 ? NONE : Long.toString(downloaded),
+      proxy != null ? "PROXY: " + proxy : NONE,
+      error != null ? error.toString() : NONE
+    };
+  }
+}
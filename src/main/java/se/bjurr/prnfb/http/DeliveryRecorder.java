@@ -0,0 +1,86 @@
+package se.bjurr.prnfb.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The latest records, in a ring buffer that is written without locks. Each record gets a unique
+ * sequence number, so concurrent writers never overwrite each other and a reader can skip slots
+ * that were overwritten while it was reading.
+ */
+public class DeliveryRecorder<T> {
+  private static class Entry<T> {
+    private final long sequence;
+    private final T record;
+
+    private Entry(final long sequence, final T record) {
+      this.sequence = sequence;
+      this.record = record;
+    }
+  }
+
+  private final AtomicLong sequence = new AtomicLong();
+  private volatile AtomicReferenceArray<Entry<T>> ring;
+
+  public DeliveryRecorder(final int capacity) {
+    checkArgument(capacity > 0, "Capacity must be positive");
+    this.ring = new AtomicReferenceArray<>(capacity);
+  }
+
+  /** @return Sequence number of the record. */
+  public long record(final T record) {
+    final AtomicReferenceArray<Entry<T>> ring = this.ring;
+    final long next = sequence.getAndIncrement();
+    ring.set((int) (next % ring.length()), new Entry<>(next, record));
+    return next;
+  }
+
+  public int getCapacity() {
+    return ring.length();
+  }
+
+  /**
+   * Keeps the latest records that fit. Records made while resizing may be lost, so this is meant
+   * for when the setting is changed.
+   */
+  public synchronized void setCapacity(final int capacity) {
+    checkArgument(capacity > 0, "Capacity must be positive");
+    if (capacity == ring.length()) {
+      return;
+    }
+    final AtomicReferenceArray<Entry<T>> resized = new AtomicReferenceArray<>(capacity);
+    for (final Entry<T> entry : getEntries()) {
+      resized.set((int) (entry.sequence % capacity), entry);
+    }
+    ring = resized;
+  }
+
+  /** @return Latest records, oldest first. Each record appears once, as it was recorded. */
+  public List<T> getLatest() {
+    final List<Entry<T>> entries = getEntries();
+    final List<T> latest = new ArrayList<>(entries.size());
+    for (final Entry<T> entry : entries) {
+      latest.add(entry.record);
+    }
+    return latest;
+  }
+
+  private List<Entry<T>> getEntries() {
+    final AtomicReferenceArray<Entry<T>> ring = this.ring;
+    final long end = sequence.get();
+    final long start = Math.max(0, end - ring.length());
+    final List<Entry<T>> entries = new ArrayList<>((int) (end - start));
+    for (long wanted = start; wanted < end; wanted++) {
+      final Entry<T> entry = ring.get((int) (wanted % ring.length()));
+      // Not yet written, or already overwritten by a later record
+      if (entry != null && entry.sequence == wanted) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,355 @@
+package se.bjurr.prnfb.http;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static se.bjurr.prnfb.service.PrnfbPlugin.isThisPlugin;
+
+import com.atlassian.event.api.EventListener;
+import com.atlassian.plugin.event.events.PluginDisablingEvent;
+import com.google.common.annotations.VisibleForTesting;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import se.bjurr.prnfb.service.SettingsService;
+import se.bjurr.prnfb.settings.DELIVERY_OVERFLOW;
+import se.bjurr.prnfb.settings.PrnfbSettingsData;
+
+/**
+ * Sends deliveries on threads owned by the plugin, with one bounded queue per destination host.
+ * <br>
+ * <br>
+ * A host gets as many workers as it has connections, or a quarter of the workers if that is more.
+ * With enough workers, hosts that do not respond only delay deliveries to themselves. Hosts take
+ * turns, one delivery at a time, on the workers they share.
+ */
+public class DeliveryScheduler {
+  private static final Logger LOG = getLogger(DeliveryScheduler.class);
+
+  private static final AtomicInteger threadNumber = new AtomicInteger();
+
+  /** Destination of URLs that can not be parsed. */
+  @VisibleForTesting static final String UNKNOWN_DESTINATION = "-";
+
+  private final Map<String, HostQueue> queues = new ConcurrentHashMap<>();
+  private final SettingsService settingsService;
+  private final ExecutorService workers;
+
+  private volatile boolean shutdown = false;
+
+  public DeliveryScheduler(final SettingsService settingsService) {
+    this(settingsService, newWorkers());
+  }
+
+  private DeliveryScheduler(final SettingsService settingsService, final ExecutorService workers) {
+    this.settingsService = settingsService;
+    this.workers = workers;
+  }
+
+  /** Not a constructor, so that the plugin does not get the host executor injected. */
+  @VisibleForTesting
+  public static DeliveryScheduler deliveryScheduler(
+      final SettingsService settingsService, final ExecutorService workers) {
+    return new DeliveryScheduler(settingsService, workers);
+  }
+
+  /**
+   * @return Host and port of the URL, deliveries to the same destination share one queue.
+   */
+  public static String destinationOf(final String url) {
+    try {
+      final URI uri = new URI(url);
+      if (uri.getHost() == null) {
+        return UNKNOWN_DESTINATION;
+      }
+      return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    } catch (final Exception e) {
+      return UNKNOWN_DESTINATION;
+    }
+  }
+
+  private static ExecutorService newWorkers() {
+    final ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            PrnfbSettingsData.DEFAULT_DELIVERY_WORKERS,
+            PrnfbSettingsData.DEFAULT_DELIVERY_WORKERS,
+            60,
+            SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable r) {
+                final Thread thread =
+                    new Thread(r, "prnfb-delivery-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Queues the delivery for its destination. If the queue is full, the configured {@link
+   * DELIVERY_OVERFLOW} decides what happens. Rejected deliveries complete exceptionally with {@link
+   * RejectedExecutionException}, dropped and replaced deliveries with {@link
+   * CancellationException}.
+   *
+   * @param coalesceKey A queued delivery may be replaced by a new one with an equal key when the
+   *     queue is full, then only the new one is sent.
+   */
+  public <T> CompletableFuture<T> submit(
+      final String destination, final Object coalesceKey, final Supplier<T> delivery) {
+    final PrnfbSettingsData settings = settingsService.getPrnfbSettingsData();
+    final int workerCount = Math.max(1, settings.getDeliveryWorkers());
+    resize(workerCount);
+    return queues
+        .computeIfAbsent(destination, HostQueue::new)
+        .offer(
+            coalesceKey,
+            delivery,
+            Math.max(1, settings.getDeliveryQueueSize()),
+            settings.getDeliveryOverflow(),
+            maxRunningPerHost(workerCount, settings.getDeliveryConnectionsPerHost()));
+  }
+
+  /**
+   * Lets a host use all of its connections, and a quarter of the workers when that is more, so
+   * that a busy host can make its connection pool grow.
+   */
+  @VisibleForTesting
+  static int maxRunningPerHost(final int workerCount, final int connectionsPerHost) {
+    return Math.max(1, Math.min(workerCount, Math.max(connectionsPerHost, workerCount / 4)));
+  }
+
+  /**
+   * @return Number of queued deliveries per destination, only destinations that have any.
+   */
+  public Map<String, Integer> getQueued() {
+    final Map<String, Integer> queued = new TreeMap<>();
+    for (final HostQueue queue : queues.values()) {
+      synchronized (queue) {
+        if (!queue.pending.isEmpty()) {
+          queued.put(queue.destination, queue.pending.size());
+        }
+      }
+    }
+    return queued;
+  }
+
+  private void resize(final int workerCount) {
+    if (!(workers instanceof ThreadPoolExecutor)) {
+      return;
+    }
+    final ThreadPoolExecutor executor = (ThreadPoolExecutor) workers;
+    if (executor.getMaximumPoolSize() == workerCount) {
+      return;
+    }
+    synchronized (executor) {
+      if (workerCount > executor.getMaximumPoolSize()) {
+        executor.setMaximumPoolSize(workerCount);
+        executor.setCorePoolSize(workerCount);
+      } else if (workerCount < executor.getMaximumPoolSize()) {
+        executor.setCorePoolSize(workerCount);
+        executor.setMaximumPoolSize(workerCount);
+      }
+    }
+  }
+
+  private void schedule(final HostQueue queue) {
+    try {
+      workers.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              runNext(queue);
+            }
+          });
+    } catch (final RejectedExecutionException e) {
+      queue.clear(e);
+      // Gives back the slot taken for this run
+      queue.shouldContinue();
+    }
+  }
+
+  /** Runs one delivery and, if there are more, puts the queue back in line behind other hosts. */
+  private void runNext(final HostQueue queue) {
+    final Delivery<?> delivery = queue.poll();
+    if (delivery != null) {
+      delivery.run();
+    }
+    if (queue.shouldContinue()) {
+      schedule(queue);
+    }
+  }
+
+  @EventListener
+  public void onPluginDisabling(final PluginDisablingEvent event) {
+    if (isThisPlugin(event)) {
+      shutdown();
+    }
+  }
+
+  /** Rejects queued and new deliveries, and interrupts running ones. */
+  public void shutdown() {
+    shutdown = true;
+    workers.shutdownNow();
+    for (final HostQueue queue : queues.values()) {
+      queue.clear(new RejectedExecutionException("Plugin is being disabled"));
+    }
+  }
+
+  private static class Delivery<T> {
+    private final Object coalesceKey;
+    private CompletableFuture<T> future = new CompletableFuture<>();
+    private Supplier<T> supplier;
+
+    private Delivery(final Object coalesceKey, final Supplier<T> supplier) {
+      this.coalesceKey = coalesceKey;
+      this.supplier = supplier;
+    }
+
+    private synchronized CompletableFuture<T> getFuture() {
+      return future;
+    }
+
+    /** @return Future of the replaced delivery. */
+    private synchronized CompletableFuture<T> replace(
+        final Supplier<T> supplier, final CompletableFuture<T> future) {
+      final CompletableFuture<T> replaced = this.future;
+      this.supplier = supplier;
+      this.future = future;
+      return replaced;
+    }
+
+    private void run() {
+      final Supplier<T> toRun;
+      final CompletableFuture<T> toComplete;
+      synchronized (this) {
+        toRun = supplier;
+        toComplete = future;
+      }
+      try {
+        toComplete.complete(toRun.get());
+      } catch (final Throwable t) {
+        toComplete.completeExceptionally(t);
+      }
+    }
+  }
+
+  private class HostQueue {
+    private final String destination;
+    private final Deque<Delivery<?>> pending = new ArrayDeque<>();
+    private int running = 0;
+
+    private HostQueue(final String destination) {
+      this.destination = destination;
+    }
+
+    private <T> CompletableFuture<T> offer(
+        final Object coalesceKey,
+        final Supplier<T> supplier,
+        final int queueSize,
+        final DELIVERY_OVERFLOW overflow,
+        final int maxRunning) {
+      final Delivery<T> delivery = new Delivery<>(coalesceKey, supplier);
+      Delivery<?> dropped = null;
+      CompletableFuture<?> replaced = null;
+      boolean shouldSchedule = false;
+      synchronized (this) {
+        if (shutdown) {
+          delivery.future.completeExceptionally(
+              new RejectedExecutionException("Plugin is being disabled"));
+          return delivery.future;
+        }
+        if (pending.size() >= queueSize) {
+          if (overflow == DELIVERY_OVERFLOW.DROP_OLDEST) {
+            dropped = pending.pollFirst();
+            LOG.warn("Queue of " + destination + " is full, dropping oldest delivery");
+          } else if (overflow == DELIVERY_OVERFLOW.COALESCE && coalesceKey != null) {
+            for (final Delivery<?> queued : pending) {
+              if (coalesceKey.equals(queued.coalesceKey)) {
+                LOG.info("Queue of " + destination + " is full, coalescing " + coalesceKey);
+                replaced = replace(queued, supplier, delivery.future);
+                break;
+              }
+            }
+          }
+          if (replaced == null && pending.size() >= queueSize) {
+            LOG.warn("Queue of " + destination + " is full, rejecting delivery");
+            delivery.future.completeExceptionally(
+                new RejectedExecutionException("Queue of " + destination + " is full"));
+            return delivery.future;
+          }
+        }
+        if (replaced == null) {
+          pending.addLast(delivery);
+          if (running < maxRunning) {
+            running++;
+            shouldSchedule = true;
+          }
+        }
+      }
+      if (dropped != null) {
+        dropped.getFuture()
+            .completeExceptionally(
+                new CancellationException("Dropped from full queue of " + destination));
+      }
+      if (replaced != null) {
+        replaced.completeExceptionally(
+            new CancellationException("Replaced by a newer delivery to " + destination));
+      }
+      if (shouldSchedule) {
+        schedule(this);
+      }
+      return delivery.future;
+    }
+
+    /**
+     * Lets the queued delivery run the new supplier and complete the new future instead.
+     * Deliveries with equal coalesce keys produce the same type of result.
+     *
+     * @return Future of the replaced delivery.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> replace(
+        final Delivery<?> queued, final Supplier<T> supplier, final CompletableFuture<T> future) {
+      return ((Delivery<T>) queued).replace(supplier, future);
+    }
+
+    private synchronized Delivery<?> poll() {
+      return pending.pollFirst();
+    }
+
+    private synchronized boolean shouldContinue() {
+      if (pending.isEmpty() || shutdown) {
+        running--;
+        return false;
+      }
+      return true;
+    }
+
+    private void clear(final RuntimeException reason) {
+      final Delivery<?>[] cleared;
+      synchronized (this) {
+        cleared = pending.toArray(new Delivery<?>[pending.size()]);
+        pending.clear();
+      }
+      for (final Delivery<?> delivery : cleared) {
+        delivery.future.completeExceptionally(reason);
+      }
+    }
+  }
+}
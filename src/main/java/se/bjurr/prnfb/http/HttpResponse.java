@@ -9,10 +9,25 @@ public class HttpResponse {
 
   private final URI uri;
 
+  private final long connectNanos;
+
+  private final long responseNanos;
+
   public HttpResponse(URI uri, int status, String content) {
+    this(uri, status, content, -1, -1);
+  }
+
+  /**
+   * @param connectNanos Time to get a connection, before the request was sent. Negative if not
+   *     measured.
+   * @param responseNanos Time from the request was sent until the response was read.
+   */
+  public HttpResponse(URI uri, int status, String content, long connectNanos, long responseNanos) {
     this.uri = uri;
     this.status = status;
     this.content = content;
+    this.connectNanos = connectNanos;
+    this.responseNanos = responseNanos;
   }
 
   @Override
@@ -47,10 +62,18 @@ public class HttpResponse {
     return true;
   }
 
+  public long getConnectNanos() {
+    return this.connectNanos;
+  }
+
   public String getContent() {
     return this.content;
   }
 
+  public long getResponseNanos() {
+    return this.responseNanos;
+  }
+
   public int getStatus() {
     return this.status;
   }
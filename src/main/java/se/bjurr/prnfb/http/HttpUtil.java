@@ -2,6 +2,8 @@ package se.bjurr.prnfb.http;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Throwables.propagate;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import com.atlassian.event.api.EventListener;
@@ -12,15 +14,21 @@ import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
 import java.net.URI;
 import java.security.cert.X509Certificate;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Named;
 import javax.net.ssl.SSLContext;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
@@ -28,8 +36,10 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
@@ -38,74 +48,197 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.ProxyAuthenticationStrategy;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.SSLContexts;
 import org.apache.http.ssl.TrustStrategy;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
+import se.bjurr.prnfb.settings.PrnfbSettingsData;
 
 @ExportAsService({HttpUtil.class})
 @Named("PRNotifier_HttpUtil")
 public class HttpUtil implements LifecycleAware {
   private static final Logger LOG = getLogger(HttpUtil.class);
+  /** When the request was sent, from {@link System#nanoTime()}. */
+  private static final String SENT_NANOS = "prnfb.sentNanos";
   private static volatile CloseableHttpClient main = null;
   private static final Map<HttpHost, CloseableHttpClient> proxies = new ConcurrentHashMap<>();
+  private static final Map<CloseableHttpClient, PoolingHttpClientConnectionManager> pools =
+      new ConcurrentHashMap<>();
+  /** Waiting longer than this for a connection makes the pool grow, if requests are waiting. */
+  private static final long SLOW_CONNECT_NANOS = MILLISECONDS.toNanos(100);
+  /** A grown route is set back to connections per host when not needing more for this long. */
+  @VisibleForTesting static final long QUIET_NANOS = MINUTES.toNanos(5);
+  /** Routes allowed more than connections per host, and when they last needed it. */
+  private static final Map<HttpRoute, Long> lastBusyNanos = new ConcurrentHashMap<>();
+  /** Kept open connections are closed when not used for this long. */
+  private static final long IDLE_CONNECTION_MILLIS = 30000;
+  /** A connection not used for this long is checked to still be open before it is reused. */
+  private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+  private static volatile int connectionsPerHost =
+      PrnfbSettingsData.DEFAULT_DELIVERY_CONNECTIONS_PER_HOST;
+  private static volatile int connectionsTotal =
+      PrnfbSettingsData.DEFAULT_DELIVERY_CONNECTIONS_TOTAL;
+  /** The shared keystore that the cached clients were built with. */
+  private static volatile ClientKeyStore clientKeyStore = null;
 
   public HttpUtil() {}
 
-  public static final TreeMap<Long, String[]> LAST_25_SUCCESSES = new TreeMap<>();
-  public static final TreeMap<Long, String[]> LAST_25_FAILURES = new TreeMap<>();
-  public static final TreeMap<Long, String[]> LAST_25_ERRORS = new TreeMap<>();
-  public static final TreeMap<Long, String[]> LAST_25_IN_FLIGHT = new TreeMap<>();
+  public static final DeliveryRecorder<DeliveryRecord> SUCCESSES =
+      new DeliveryRecorder<>(PrnfbSettingsData.DEFAULT_DELIVERY_HISTORY_SIZE);
+  public static final DeliveryRecorder<DeliveryRecord> FAILURES =
+      new DeliveryRecorder<>(PrnfbSettingsData.DEFAULT_DELIVERY_HISTORY_SIZE);
+  public static final DeliveryRecorder<DeliveryRecord> ERRORS =
+      new DeliveryRecorder<>(PrnfbSettingsData.DEFAULT_DELIVERY_HISTORY_SIZE);
+  private static final Map<Long, DeliveryRecord> IN_FLIGHT = new ConcurrentSkipListMap<>();
+  private static final AtomicLong inFlightSequence = new AtomicLong();
 
-  public static void reset() {
-    if (main != null) {
-      try {
-        main.close();
-      } catch (Throwable t) {
-        // swallow
+  /** @return Requests waiting for their response, oldest first. */
+  public static List<DeliveryRecord> getInFlight() {
+    return new ArrayList<>(IN_FLIGHT.values());
+  }
+
+  /** @param size Number of successes, failures and errors to keep, each. */
+  public static void setHistorySize(final int size) {
+    final int capacity = Math.max(1, size);
+    if (SUCCESSES.getCapacity() == capacity) {
+      return;
+    }
+    SUCCESSES.setCapacity(capacity);
+    FAILURES.setCapacity(capacity);
+    ERRORS.setCapacity(capacity);
+  }
+
+  /**
+   * Applies to the pools of all clients, the pool of a host may still grow beyond connections per
+   * host when it is busy.
+   */
+  public static void setConnectionLimits(final int perHost, final int total) {
+    final int maxPerRoute = Math.max(1, perHost);
+    final int maxTotal = Math.max(maxPerRoute, total);
+    if (maxPerRoute == connectionsPerHost && maxTotal == connectionsTotal) {
+      return;
+    }
+    connectionsPerHost = maxPerRoute;
+    connectionsTotal = maxTotal;
+    for (final PoolingHttpClientConnectionManager cm : pools.values()) {
+      applyConnectionLimits(cm, maxPerRoute, maxTotal);
+    }
+  }
+
+  /**
+   * Routes that have grown keep their size, within the new ceiling, until they are quiet. Routes
+   * get at least the new connections per host.
+   */
+  @VisibleForTesting
+  static void applyConnectionLimits(
+      final PoolingHttpClientConnectionManager cm, final int perHost, final int total) {
+    cm.setMaxTotal(total);
+    cm.setDefaultMaxPerRoute(perHost);
+    final int ceiling = ceiling(perHost, total);
+    for (final HttpRoute route : cm.getRoutes()) {
+      final int max = Math.min(ceiling, Math.max(perHost, cm.getMaxPerRoute(route)));
+      cm.setMaxPerRoute(route, max);
+      if (max > perHost) {
+        lastBusyNanos.putIfAbsent(route, System.nanoTime());
       }
+    }
+  }
+
+  /** @return Leased, pending and available connections per route, of all clients. */
+  public static Map<String, PoolStats> getConnectionStats() {
+    final Map<String, PoolStats> stats = new TreeMap<>();
+    for (final PoolingHttpClientConnectionManager cm : pools.values()) {
+      stats.putAll(connectionStats(cm));
+    }
+    return stats;
+  }
+
+  @VisibleForTesting
+  static Map<String, PoolStats> connectionStats(final PoolingHttpClientConnectionManager cm) {
+    final Map<String, PoolStats> stats = new TreeMap<>();
+    for (final HttpRoute route : cm.getRoutes()) {
+      stats.put(route.toString(), cm.getStats(route));
+    }
+    return stats;
+  }
+
+  public static void reset() {
+    synchronized (HttpUtil.class) {
+      close(main);
       main = null;
     }
-    for (CloseableHttpClient c : proxies.values()) {
-      if (c != null) {
-        try {
-          c.close();
-        } catch (Throwable t) {
-          // swallow
-        }
-      }
+    for (final Iterator<CloseableHttpClient> it = proxies.values().iterator(); it.hasNext(); ) {
+      final CloseableHttpClient c = it.next();
+      it.remove();
+      close(c);
+    }
+    lastBusyNanos.clear();
+    clientKeyStore = null;
+  }
+
+  private static void close(final CloseableHttpClient client) {
+    if (client == null) {
+      return;
+    }
+    pools.remove(client);
+    try {
+      client.close();
+    } catch (Throwable t) {
+      // swallow
     }
-    proxies.clear();
   }
 
   private static CloseableHttpClient getCachedClient(final UrlInvoker u, final HttpHost h) {
-    CloseableHttpClient client;
+    final ClientKeyStore cks = u.getClientKeyStore();
+    if (cks != null && cks != clientKeyStore) {
+      synchronized (HttpUtil.class) {
+        if (cks != clientKeyStore) {
+          if (clientKeyStore != null) {
+            LOG.info("Keystore changed, creating new HTTP clients");
+            reset();
+          }
+          clientKeyStore = cks;
+        }
+      }
+    }
     if (h != null) {
       // proxy=true
-      client = proxies.get(h);
-      if (client == null) {
-        HttpClientBuilder builder = HttpClientBuilder.create();
-        configureSsl(u, builder, true);
-        configureForProxy(u, h, builder);
-        client = builder.build();
-        proxies.put(h, client);
-      }
-    } else {
-      // proxy=false
-      client = main;
-      if (client == null) {
-        HttpClientBuilder builder = HttpClientBuilder.create();
-        configureSsl(u, builder, false);
-        client = builder.build();
-        main = client;
+      return proxies.computeIfAbsent(h, proxy -> newClient(u, proxy));
+    }
+    // proxy=false
+    CloseableHttpClient client = main;
+    if (client == null) {
+      synchronized (HttpUtil.class) {
+        client = main;
+        if (client == null) {
+          client = newClient(u, null);
+          main = client;
+        }
       }
     }
     return client;
   }
 
+  /**
+   * Each client has its own pool and idle connection evictor, so only one is created for each
+   * proxy, and one without proxy, until {@link #reset()}.
+   */
+  private static CloseableHttpClient newClient(final UrlInvoker u, final HttpHost proxy) {
+    HttpClientBuilder builder = HttpClientBuilder.create();
+    final PoolingHttpClientConnectionManager cm = configureSsl(u, builder);
+    if (proxy != null) {
+      configureForProxy(u, proxy, builder);
+    }
+    final CloseableHttpClient client = builder.build();
+    pools.put(client, cm);
+    return client;
+  }
+
   public static HttpResponse doInvoke(final UrlInvoker u, final HttpRequestBase httpRequestBase) {
-    SimpleDateFormat df = new SimpleDateFormat("YYYY-MM-dd'T'HH:mm:ss.SSSZ");
     HttpHost h = u.getHttpHostForProxy();
     CloseableHttpClient client = getCachedClient(u, h);
     CloseableHttpResponse httpResponse = null;
@@ -115,55 +248,54 @@ public class HttpUtil implements LifecycleAware {
       contentLength = b.getEntity().getContentLength();
     }
     long start = System.currentTimeMillis();
-    Date d = new Date(start);
+    final long startNanos = System.nanoTime();
+    final HttpClientContext context = HttpClientContext.create();
     final URI uri = httpRequestBase.getURI();
-    String[] forLog =
-        new String[] {
-          df.format(d),
-          "-",
-          "-",
-          httpRequestBase.getMethod(),
-          "" + contentLength,
-          uri.toString(),
-          "-",
-          "-",
-          h != null ? "PROXY: " + h : "-"
-        };
-    put(LAST_25_IN_FLIGHT, start, forLog);
+    final DeliveryRecord record =
+        new DeliveryRecord(start, httpRequestBase.getMethod(), contentLength, uri, h);
+    final long inFlightId = inFlightSequence.getAndIncrement();
+    IN_FLIGHT.put(inFlightId, record);
     long delay = -1;
     try {
-      httpResponse = client.execute(httpRequestBase);
+      httpResponse = client.execute(httpRequestBase, context);
       delay = System.currentTimeMillis() - start;
-      forLog[1] = delay + "ms";
       final int statusCode = httpResponse.getStatusLine().getStatusCode();
-      forLog[2] = Integer.toString(statusCode);
 
       final HttpEntity entity = httpResponse.getEntity();
       String entityString = "";
       if (entity != null) {
         entityString = EntityUtils.toString(entity, UTF_8);
       }
-      forLog[6] = "" + entityString.length();
-
+      final DeliveryRecord responded = record.responded(delay, statusCode, entityString.length());
       if (200 <= statusCode && statusCode <= 299) {
-        put(LAST_25_SUCCESSES, start, forLog);
+        SUCCESSES.record(responded);
       } else {
-        put(LAST_25_FAILURES, start, forLog);
+        FAILURES.record(responded);
+      }
+      final Long sentNanos = (Long) context.getAttribute(SENT_NANOS);
+      if (sentNanos == null) {
+        return new HttpResponse(uri, statusCode, entityString);
+      }
+      final PoolingHttpClientConnectionManager cm = pools.get(client);
+      if (cm != null) {
+        final long now = System.nanoTime();
+        if (sentNanos - startNanos > SLOW_CONNECT_NANOS) {
+          growBusyRoutes(cm, connectionsPerHost, connectionsTotal, now);
+        }
+        shrinkQuietRoutes(cm, connectionsPerHost, now);
       }
-      return new HttpResponse(uri, statusCode, entityString);
+      return new HttpResponse(
+          uri, statusCode, entityString, sentNanos - startNanos, System.nanoTime() - sentNanos);
 
     } catch (final Exception e) {
       if (delay == -1) {
         delay = System.currentTimeMillis() - start;
       }
-      forLog[1] = delay + "ms";
-      forLog[2] = "ERR";
-      forLog[8] = e.toString();
-
-      put(LAST_25_ERRORS, start, forLog);
+      ERRORS.record(record.failed(delay, e));
       LOG.error("PR-Notifier-HTTP-Failure - " + e, e);
 
     } finally {
+      IN_FLIGHT.remove(inFlightId);
       try {
         if (httpResponse != null) {
           httpResponse.close();
@@ -175,20 +307,6 @@ public class HttpUtil implements LifecycleAware {
     return null;
   }
 
-  private static void put(final TreeMap<Long, String[]> m, Long l, String[] v) {
-    synchronized (m) {
-      while (m.size() > 24) {
-        m.pollFirstEntry();
-      }
-      m.put(l, v);
-    }
-    if (m != LAST_25_IN_FLIGHT) {
-      synchronized (LAST_25_IN_FLIGHT) {
-        LAST_25_IN_FLIGHT.remove(l);
-      }
-    }
-  }
-
   private static SSLContext newSslContext(UrlInvoker u) throws Exception {
     SSLContextBuilder sslContextBuilder = SSLContexts.custom();
     if (u.shouldAcceptAnyCertificate()) {
@@ -214,8 +332,8 @@ public class HttpUtil implements LifecycleAware {
     return customContext;
   }
 
-  private static void configureSsl(
-      UrlInvoker u, final HttpClientBuilder builder, final boolean isProxy) {
+  private static PoolingHttpClientConnectionManager configureSsl(
+      UrlInvoker u, final HttpClientBuilder builder) {
     PoolingHttpClientConnectionManager cm = null;
     try {
       SSLContext s = newSslContext(u);
@@ -240,14 +358,66 @@ public class HttpUtil implements LifecycleAware {
             .setSocketTimeout(45000)
             .build();
     builder.setDefaultRequestConfig(config);
-    if (isProxy) {
-      cm.setMaxTotal(12);
-      cm.setDefaultMaxPerRoute(4);
-    } else {
-      cm.setMaxTotal(42);
-      cm.setDefaultMaxPerRoute(8);
-    }
+    builder.setRequestExecutor(new SentTimeRecordingExecutor());
+    cm.setMaxTotal(connectionsTotal);
+    cm.setDefaultMaxPerRoute(connectionsPerHost);
+    cm.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
     builder.setConnectionManager(cm);
+    builder.evictExpiredConnections();
+    builder.evictIdleConnections(IDLE_CONNECTION_MILLIS, MILLISECONDS);
+    return cm;
+  }
+
+  /** A host never gets more than half of the pool, unless configured to. */
+  private static int ceiling(final int perHost, final int total) {
+    return Math.max(perHost, total / 2);
+  }
+
+  /**
+   * Lets each host with requests waiting for a connection use one more, so that other hosts still
+   * get connections.
+   */
+  @VisibleForTesting
+  static void growBusyRoutes(
+      final PoolingHttpClientConnectionManager cm,
+      final int perHost,
+      final int total,
+      final long now) {
+    final int ceiling = ceiling(perHost, total);
+    for (final HttpRoute route : cm.getRoutes()) {
+      final PoolStats stats = cm.getStats(route);
+      if (stats.getPending() > 0 && stats.getMax() < ceiling) {
+        LOG.info("Requests are waiting for connections to " + route + ", allowing one more");
+        cm.setMaxPerRoute(route, stats.getMax() + 1);
+        lastBusyNanos.put(route, now);
+      }
+    }
+  }
+
+  /**
+   * Sets grown routes back to connections per host when they have not used more, or had requests
+   * waiting, for {@link #QUIET_NANOS}.
+   */
+  @VisibleForTesting
+  static void shrinkQuietRoutes(
+      final PoolingHttpClientConnectionManager cm, final int perHost, final long now) {
+    if (lastBusyNanos.isEmpty()) {
+      return;
+    }
+    for (final HttpRoute route : cm.getRoutes()) {
+      final Long lastBusy = lastBusyNanos.get(route);
+      if (lastBusy == null) {
+        continue;
+      }
+      final PoolStats stats = cm.getStats(route);
+      if (stats.getLeased() > perHost || stats.getPending() > 0) {
+        lastBusyNanos.put(route, now);
+      } else if (now - lastBusy > QUIET_NANOS) {
+        LOG.info("No longer busy, allowing " + perHost + " connections to " + route);
+        cm.setMaxPerRoute(route, perHost);
+        lastBusyNanos.remove(route);
+      }
+    }
   }
 
   @VisibleForTesting
@@ -266,6 +436,20 @@ public class HttpUtil implements LifecycleAware {
     builder.setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
   }
 
+  /**
+   * Remembers when the request is sent, after the connection is leased and connected, so that
+   * connect and response time can be told apart.
+   */
+  private static class SentTimeRecordingExecutor extends HttpRequestExecutor {
+    @Override
+    public org.apache.http.HttpResponse execute(
+        final HttpRequest request, final HttpClientConnection conn, final HttpContext context)
+        throws IOException, HttpException {
+      context.setAttribute(SENT_NANOS, System.nanoTime());
+      return super.execute(request, conn, context);
+    }
+  }
+
   @Override
   public void onStart() {}
 
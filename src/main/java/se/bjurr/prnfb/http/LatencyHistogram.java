@@ -0,0 +1,108 @@
+package se.bjurr.prnfb.http;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies, in microseconds, counted in buckets that grow exponentially. Like an HdrHistogram
+ * with 2 significant bits, so percentiles are within 25% of the recorded values. Recording does
+ * not lock or allocate.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder totalMicros = new LongAdder();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  @VisibleForTesting
+  static int bucketOf(final long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+    final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  @VisibleForTesting
+  static long lowestOf(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+    final long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  private static double toMillis(final long micros) {
+    return micros / 1000d;
+  }
+
+  /** @param nanos Negative durations are recorded as 0. */
+  public void record(final long nanos) {
+    final long micros = Math.max(0, NANOSECONDS.toMicros(nanos));
+    counts.incrementAndGet(bucketOf(micros));
+    totalMicros.add(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      count += counts.get(bucket);
+    }
+    return count;
+  }
+
+  public double getMeanMillis() {
+    final long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    return toMillis(totalMicros.sum()) / count;
+  }
+
+  public double getMaxMillis() {
+    return toMillis(maxMicros.get());
+  }
+
+  public double getP50Millis() {
+    return getPercentileMillis(50);
+  }
+
+  public double getP90Millis() {
+    return getPercentileMillis(90);
+  }
+
+  public double getP99Millis() {
+    return getPercentileMillis(99);
+  }
+
+  /**
+   * @param percentile From 0 to 100.
+   * @return Highest value in the bucket of the percentile, but never more than the max.
+   */
+  public double getPercentileMillis(final double percentile) {
+    final long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= rank) {
+        final long highest = bucket + 1 < BUCKETS ? lowestOf(bucket + 1) - 1 : Long.MAX_VALUE;
+        return toMillis(Math.min(highest, maxMicros.get()));
+      }
+    }
+    return getMaxMillis();
+  }
+}
@@ -22,7 +22,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpVersion;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
@@ -74,7 +73,7 @@ public class UrlInvoker {
   private boolean shouldAcceptAnyCertificate;
 
   private String urlParam;
-  private ProtocolVersion httpVersion = HttpVersion.HTTP_1_0;
+  private ProtocolVersion httpVersion = HTTP_1_1;
 
   UrlInvoker() {}
 
@@ -123,6 +122,10 @@ public class UrlInvoker {
     return this.proxyUser;
   }
 
+  public ProtocolVersion getHttpVersion() {
+    return this.httpVersion;
+  }
+
   public HttpResponse getResponse() {
     return this.response;
   }
@@ -135,13 +138,12 @@ public class UrlInvoker {
     return this.urlParam;
   }
 
+  /** HTTP 1.1, unless HTTP_1_0 is given, so that pooled connections are kept open and reused. */
   public UrlInvoker setHttpVersion(final String httpVersion) {
-    if (httpVersion == null || httpVersion.equals("HTTP_1_0")) {
+    if ("HTTP_1_0".equals(httpVersion)) {
       this.httpVersion = HTTP_1_0;
-    } else if (httpVersion.equals("HTTP_1_1")) {
-      this.httpVersion = HTTP_1_1;
     } else {
-      this.httpVersion = HTTP_1_0;
+      this.httpVersion = HTTP_1_1;
     }
     return this;
   }
@@ -244,6 +246,15 @@ public class UrlInvoker {
     return this;
   }
 
+  /** Proxy, if any, configured in the notification. */
+  public UrlInvoker withProxy(final PrnfbNotification notification) {
+    return withProxyServer(notification.getProxyServer()) //
+        .withProxyPort(notification.getProxyPort()) //
+        .withProxySchema(notification.getProxySchema()) //
+        .withProxyUser(notification.getProxyUser()) //
+        .withProxyPassword(notification.getProxyPassword());
+  }
+
   public UrlInvoker withUrlParam(final String urlParam) {
     this.urlParam = urlParam.replaceAll("\\s", "%20");
     return this;
@@ -0,0 +1,121 @@
+package se.bjurr.prnfb.listener;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.atlassian.bitbucket.event.pull.PullRequestEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestRescopedEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestUpdatedEvent;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import org.slf4j.Logger;
+import se.bjurr.prnfb.settings.PrnfbNotification;
+
+/**
+ * Collects {@link PullRequestRescopedEvent}s and {@link PullRequestUpdatedEvent}s of a pull request
+ * for notifications with {@link PrnfbNotification#getDebounceSeconds()} and hands them over as one,
+ * when the window has passed. The window starts with the first event and is not extended by later
+ * events, so that a pull request that is pushed to all the time is still notified.
+ */
+public class PrnfbEventDebouncer {
+
+  public interface DebouncedEventHandler {
+    /**
+     * @param first First event in the window.
+     * @param latest Latest event in the window, same as first if there was only one.
+     */
+    void handle(PullRequestEvent first, PullRequestEvent latest, UUID notificationUuid);
+  }
+
+  private static class Window {
+    private final PullRequestEvent first;
+    private volatile PullRequestEvent latest;
+    private final UUID notificationUuid;
+
+    private Window(final PullRequestEvent first, final UUID notificationUuid) {
+      this.first = first;
+      this.latest = first;
+      this.notificationUuid = notificationUuid;
+    }
+  }
+
+  private static final Logger LOG = getLogger(PrnfbEventDebouncer.class);
+
+  public static boolean isDebounced(
+      final PrnfbNotification notification, final PullRequestEvent event) {
+    return notification.getDebounceSeconds() != null
+        && notification.getDebounceSeconds() > 0
+        && (event instanceof PullRequestRescopedEvent || event instanceof PullRequestUpdatedEvent);
+  }
+
+  private final DebouncedEventHandler handler;
+  private final ScheduledExecutorService scheduler;
+  private final Map<List<Object>, Window> windows = new ConcurrentHashMap<>();
+
+  public PrnfbEventDebouncer(
+      final DebouncedEventHandler handler, final ScheduledExecutorService scheduler) {
+    this.handler = handler;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Rescoped and updated events are not collapsed with each other, they trigger different actions.
+   */
+  public void debounce(final PrnfbNotification notification, final PullRequestEvent event) {
+    final List<Object> key =
+        asList(
+            notification.getUuid(),
+            event.getPullRequest().getToRef().getRepository().getId(),
+            event.getPullRequest().getId(),
+            event instanceof PullRequestRescopedEvent);
+    windows.compute(
+        key,
+        (k, window) -> {
+          if (window != null) {
+            window.latest = event;
+            return window;
+          }
+          scheduler.schedule(() -> fire(k), notification.getDebounceSeconds(), SECONDS);
+          return new Window(event, notification.getUuid());
+        });
+  }
+
+  private void fire(final List<Object> key) {
+    final Window window = windows.remove(key);
+    if (window == null) {
+      return;
+    }
+    try {
+      handler.handle(window.first, window.latest, window.notificationUuid);
+    } catch (final Exception e) {
+      LOG.error("Unable to handle debounced events of notification " + window.notificationUuid, e);
+    }
+  }
+
+  /** Handles all open windows now, instead of waiting for them to pass. */
+  @VisibleForTesting
+  void fireAll() {
+    for (final List<Object> key : new ArrayList<>(windows.keySet())) {
+      fire(key);
+    }
+  }
+
+  @VisibleForTesting
+  int getOpenWindows() {
+    return windows.size();
+  }
+
+  public void shutdown() {
+    scheduler.shutdownNow();
+    if (!windows.isEmpty()) {
+      LOG.info("Dropping " + windows.size() + " debounced notifications on shutdown");
+      windows.clear();
+    }
+  }
+}
@@ -2,6 +2,9 @@ package se.bjurr.prnfb.listener;
 
 import com.atlassian.bitbucket.event.pull.PullRequestEvent;
 import com.atlassian.bitbucket.event.pull.PullRequestRescopedEvent;
+import com.atlassian.bitbucket.pull.PullRequest;
+import java.util.EnumSet;
+import java.util.Set;
 import se.bjurr.prnfb.settings.PrnfbNotification;
 
 public enum PrnfbPullRequestAction {
@@ -20,18 +23,34 @@ public enum PrnfbPullRequestAction {
   UPDATED,
   REVIEWED; //
 
+  /**
+   * All actions that {@link #fromPullRequestEvent(PullRequestEvent, PrnfbNotification)} may return
+   * for the given event, whatever notification it is given.
+   */
+  public static Set<PrnfbPullRequestAction> possibleActions(PullRequestEvent event) {
+    if (event instanceof PullRequestRescopedEvent) {
+      return EnumSet.of(RESCOPED, RESCOPED_FROM, RESCOPED_TO);
+    }
+    return EnumSet.of(PrnfbPullRequestAction.valueOf(event.getAction().name()));
+  }
+
   public static PrnfbPullRequestAction fromPullRequestEvent(
       PullRequestEvent event, PrnfbNotification notification) {
+    return fromPullRequestEvent(event, event.getPullRequest(), notification);
+  }
+
+  /**
+   * Like {@link #fromPullRequestEvent(PullRequestEvent, PrnfbNotification)} but compares the
+   * previous hashes of the event with the given, possibly later, state of the pull request.
+   */
+  public static PrnfbPullRequestAction fromPullRequestEvent(
+      PullRequestEvent event, PullRequest pullRequest, PrnfbNotification notification) {
     if (event instanceof PullRequestRescopedEvent) {
       final PullRequestRescopedEvent rescopedEvent = (PullRequestRescopedEvent) event;
       final boolean toChanged =
-          !rescopedEvent
-              .getPreviousToHash()
-              .equals(rescopedEvent.getPullRequest().getToRef().getLatestCommit());
+          !rescopedEvent.getPreviousToHash().equals(pullRequest.getToRef().getLatestCommit());
       final boolean fromChanged =
-          !rescopedEvent
-              .getPreviousFromHash()
-              .equals(rescopedEvent.getPullRequest().getFromRef().getLatestCommit());
+          !rescopedEvent.getPreviousFromHash().equals(pullRequest.getFromRef().getLatestCommit());
       if (fromChanged && !toChanged) {
         return RESCOPED_FROM;
       } else if (toChanged && !fromChanged) {
@@ -3,12 +3,18 @@ package se.bjurr.prnfb.listener;
 import static com.atlassian.bitbucket.permission.Permission.ADMIN;
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.of;
+import static com.google.common.base.Throwables.propagate;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
-import static java.util.regex.Pattern.compile;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.slf4j.LoggerFactory.getLogger;
+import static se.bjurr.prnfb.http.ClientKeyStore.clientKeyStore;
+import static se.bjurr.prnfb.http.DeliveryScheduler.destinationOf;
 import static se.bjurr.prnfb.http.UrlInvoker.urlInvoker;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.fromPullRequestEvent;
+import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.possibleActions;
+import static se.bjurr.prnfb.service.PrnfbPlugin.isThisPlugin;
 import static se.bjurr.prnfb.settings.TRIGGER_IF_MERGE.ALWAYS;
 import static se.bjurr.prnfb.settings.TRIGGER_IF_MERGE.CONFLICTING;
 import static se.bjurr.prnfb.settings.TRIGGER_IF_MERGE.NOT_CONFLICTING;
@@ -29,15 +35,32 @@ import com.atlassian.bitbucket.event.pull.PullRequestRescopedEvent;
 import com.atlassian.bitbucket.event.pull.PullRequestUpdatedEvent;
 import com.atlassian.bitbucket.pull.PullRequest;
 import com.atlassian.bitbucket.pull.PullRequestService;
+import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.scm.ScmService;
 import com.atlassian.bitbucket.user.SecurityService;
 import com.atlassian.bitbucket.util.Operation;
 import com.atlassian.event.api.EventListener;
+import com.atlassian.plugin.event.events.PluginDisablingEvent;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import org.slf4j.Logger;
 import se.bjurr.prnfb.http.ClientKeyStore;
+import se.bjurr.prnfb.http.DeliveryMetrics;
+import se.bjurr.prnfb.http.DeliveryScheduler;
 import se.bjurr.prnfb.http.HttpResponse;
 import se.bjurr.prnfb.http.Invoker;
 import se.bjurr.prnfb.http.NotificationResponse;
@@ -45,6 +68,7 @@ import se.bjurr.prnfb.http.UrlInvoker;
 import se.bjurr.prnfb.service.PrnfbRenderer;
 import se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR;
 import se.bjurr.prnfb.service.PrnfbRendererFactory;
+import se.bjurr.prnfb.service.RetryService;
 import se.bjurr.prnfb.service.SettingsService;
 import se.bjurr.prnfb.service.VariablesContext;
 import se.bjurr.prnfb.service.VariablesContext.VariablesContextBuilder;
@@ -56,6 +80,8 @@ import se.bjurr.prnfb.settings.TRIGGER_IF_MERGE;
 public class PrnfbPullRequestEventListener {
 
   private static final Logger LOG = getLogger(PrnfbPullRequestEventListener.class);
+  private static final long CONFLICTS_CACHE_SIZE = 1000L;
+  private static final long CONFLICTS_CACHE_MINUTES = 10L;
   private static Invoker mockedInvoker = null;
 
   @VisibleForTesting
@@ -63,9 +89,18 @@ public class PrnfbPullRequestEventListener {
     PrnfbPullRequestEventListener.mockedInvoker = invoker;
   }
 
+  private final Cache<List<Object>, Boolean> conflicts =
+      CacheBuilder.newBuilder() //
+          .maximumSize(CONFLICTS_CACHE_SIZE) //
+          .expireAfterWrite(CONFLICTS_CACHE_MINUTES, MINUTES) //
+          .build();
+  private final PrnfbEventDebouncer debouncer;
+  private final DeliveryMetrics deliveryMetrics;
+  private final DeliveryScheduler deliveryScheduler;
   private final ExecutorService executorService;
   private final PrnfbRendererFactory prnfbRendererFactory;
   private final PullRequestService pullRequestService;
+  private final RetryService retryService;
   private final SecurityService securityService;
   private final ScmService scmService;
 
@@ -77,13 +112,36 @@ public class PrnfbPullRequestEventListener {
       final ExecutorService executorService,
       final SettingsService settingsService,
       final SecurityService securityService,
-      final ScmService scmService) {
+      final ScmService scmService,
+      final DeliveryScheduler deliveryScheduler,
+      final RetryService retryService,
+      final DeliveryMetrics deliveryMetrics) {
     this.prnfbRendererFactory = prnfbRendererFactory;
     this.pullRequestService = pullRequestService;
     this.executorService = executorService;
     this.settingsService = settingsService;
     this.securityService = securityService;
     this.scmService = scmService;
+    this.deliveryScheduler = deliveryScheduler;
+    this.retryService = retryService;
+    this.deliveryMetrics = deliveryMetrics;
+    this.debouncer =
+        new PrnfbEventDebouncer(
+            this::handleDebouncedEvents,
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                  @Override
+                  public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "prnfb-debounce");
+                    thread.setDaemon(true);
+                    return thread;
+                  }
+                }));
+  }
+
+  @VisibleForTesting
+  PrnfbEventDebouncer getDebouncer() {
+    return debouncer;
   }
 
   private Invoker createInvoker() {
@@ -102,15 +160,32 @@ public class PrnfbPullRequestEventListener {
 
     final PullRequest pullRequest = pullRequestEvent.getPullRequest();
     final PrnfbSettingsData settings = settingsService.getPrnfbSettingsData();
-    final ClientKeyStore clientKeyStore = new ClientKeyStore(settings);
+    final ClientKeyStore clientKeyStore = clientKeyStore(settings);
 
     if (pullRequest.isClosed() && pullRequestEvent instanceof PullRequestCommentEvent) {
       return;
     }
 
-    for (final PrnfbNotification notification : settingsService.getNotifications()) {
+    // Shared by all notifications, so that variables are only resolved once per event
+    final VariablesContext variables =
+        new VariablesContextBuilder() //
+            .setPullRequestEvent(pullRequestEvent) //
+            .build();
+
+    final Repository repository = pullRequest.getToRef().getRepository();
+    final List<PrnfbNotification> candidates =
+        settingsService.getNotificationCandidates(
+            possibleActions(pullRequestEvent),
+            repository.getProject().getKey(),
+            repository.getSlug());
+    for (final PrnfbNotification notification : candidates) {
       try {
-        handleEventNotification(pullRequestEvent, settings, clientKeyStore, notification);
+        if (PrnfbEventDebouncer.isDebounced(notification, pullRequestEvent)) {
+          debouncer.debounce(notification, pullRequestEvent);
+          continue;
+        }
+        handleEventNotification(
+            pullRequestEvent, pullRequest, settings, clientKeyStore, variables, notification);
       } catch (final Exception e) {
         LOG.error(
             "Unable to handle notification "
@@ -122,30 +197,86 @@ public class PrnfbPullRequestEventListener {
     }
   }
 
+  /**
+   * Sends one notification for events collected by the {@link PrnfbEventDebouncer}. It is rendered
+   * with the current state of the pull request, but the previous hashes are taken from the first
+   * event so that they cover all changes in the window.
+   */
+  private void handleDebouncedEvents(
+      final PullRequestEvent first, final PullRequestEvent latest, final UUID notificationUuid) {
+    final Optional<PrnfbNotification> notification =
+        settingsService.findNotification(notificationUuid);
+    if (!notification.isPresent()) {
+      return;
+    }
+    final PrnfbSettingsData settings = settingsService.getPrnfbSettingsData();
+    final VariablesContext variables =
+        new VariablesContextBuilder() //
+            .setPullRequestEvent(first) //
+            .build();
+    handleEventNotification(
+        first,
+        currentPullRequest(latest.getPullRequest()),
+        settings,
+        clientKeyStore(settings),
+        variables,
+        notification.get());
+  }
+
+  private PullRequest currentPullRequest(final PullRequest pullRequest) {
+    final PullRequest current =
+        securityService //
+            .withPermission(ADMIN, "Current pull request") //
+            .call(
+                new Operation<PullRequest, RuntimeException>() {
+                  @Override
+                  public PullRequest perform() throws RuntimeException {
+                    return pullRequestService.getById(
+                        pullRequest.getToRef().getRepository().getId(), pullRequest.getId());
+                  }
+                });
+    if (current == null) {
+      return pullRequest;
+    }
+    return current;
+  }
+
   private void handleEventNotification(
       final PullRequestEvent pullRequestEvent,
+      final PullRequest pullRequest,
       final PrnfbSettingsData settings,
       final ClientKeyStore clientKeyStore,
+      final VariablesContext variables,
       final PrnfbNotification notification) {
-    final PrnfbPullRequestAction action = fromPullRequestEvent(pullRequestEvent, notification);
-    final VariablesContext variables =
-        new VariablesContextBuilder() //
-            .setPullRequestEvent(pullRequestEvent) //
-            .build();
+    final PrnfbPullRequestAction action =
+        fromPullRequestEvent(pullRequestEvent, pullRequest, notification);
     final PrnfbRenderer renderer =
         prnfbRendererFactory.create(
-            pullRequestEvent.getPullRequest(),
-            action,
+            pullRequest, action, notification, variables, pullRequestEvent.getUser());
+    notifyAsync(
             notification,
-            variables,
-            pullRequestEvent.getUser());
-    notify(
-        notification,
-        action,
-        pullRequestEvent.getPullRequest(),
-        renderer,
-        clientKeyStore,
-        settings.isShouldAcceptAnyCertificate());
+            action,
+            pullRequest,
+            renderer,
+            clientKeyStore,
+            settings.isShouldAcceptAnyCertificate()) //
+        .whenComplete(
+            (response, e) -> {
+              final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+              if (cause instanceof RejectedExecutionException
+                  || cause instanceof CancellationException) {
+                // Queue overflow, already logged by the DeliveryScheduler
+                return;
+              }
+              if (e != null) {
+                LOG.error(
+                    "Unable to invoke notification "
+                        + notification.getUuid()
+                        + " "
+                        + notification.getName(),
+                    e);
+              }
+            });
   }
 
   @VisibleForTesting
@@ -174,6 +305,31 @@ public class PrnfbPullRequestEventListener {
       final PullRequest pullRequest,
       final ClientKeyStore clientKeyStore,
       final Boolean shouldAcceptAnyCertificate) {
+    return isNotificationTriggeredByAction(
+        notification,
+        pullRequestAction,
+        renderer,
+        pullRequest,
+        clientKeyStore,
+        shouldAcceptAnyCertificate,
+        conflictsOf(pullRequest));
+  }
+
+  /**
+   * Like {@link #isNotificationTriggeredByAction(PrnfbNotification, PrnfbPullRequestAction,
+   * PrnfbRenderer, PullRequest, ClientKeyStore, Boolean)} but with the merge check given, so that
+   * it can be shared by several notifications on the same pull request.
+   *
+   * @param isConflicted From {@link #conflictsOf(PullRequest)}.
+   */
+  public boolean isNotificationTriggeredByAction(
+      final PrnfbNotification notification,
+      final PrnfbPullRequestAction pullRequestAction,
+      final PrnfbRenderer renderer,
+      final PullRequest pullRequest,
+      final ClientKeyStore clientKeyStore,
+      final Boolean shouldAcceptAnyCertificate,
+      final Supplier<Boolean> isConflicted) {
     if (!notification.getTriggers().contains(pullRequestAction)) {
       return FALSE;
     }
@@ -196,9 +352,11 @@ public class PrnfbPullRequestEventListener {
       }
     }
 
-    if (notification.getFilterRegexp().isPresent()
+    if (notification.getFilterPattern().isPresent()
         && notification.getFilterString().isPresent()
-        && !compile(notification.getFilterRegexp().get())
+        && !notification
+            .getFilterPattern()
+            .get()
             .matcher(
                 renderer.render(
                     notification.getFilterString().get(),
@@ -216,8 +374,8 @@ public class PrnfbPullRequestEventListener {
     if (notification.getTriggerIfCanMerge() != ALWAYS) {
       // Cannot perform canMerge unless PR is open
       final boolean notYetMerged = pullRequest.isOpen();
-      final boolean isConflicted = notYetMerged && hasConflicts(pullRequest);
-      if (ignoreBecauseOfConflicting(notification.getTriggerIfCanMerge(), isConflicted)) {
+      if (ignoreBecauseOfConflicting(
+          notification.getTriggerIfCanMerge(), notYetMerged && isConflicted.get())) {
         return FALSE;
       }
     }
@@ -225,7 +383,32 @@ public class PrnfbPullRequestEventListener {
     return TRUE;
   }
 
+  /** @return Merge check of the pull request, made when first needed and then remembered. */
+  public Supplier<Boolean> conflictsOf(final PullRequest pullRequest) {
+    return Suppliers.memoize(() -> hasConflicts(pullRequest));
+  }
+
+  /**
+   * The merge check is cached since it is expensive, and the same pull request is often checked
+   * for several notifications and buttons. It is keyed by commits as well as version because a
+   * rescope does not always change the version.
+   */
   private boolean hasConflicts(final PullRequest pullRequest) {
+    final List<Object> key =
+        asList(
+            pullRequest.getToRef().getRepository().getId(),
+            pullRequest.getId(),
+            pullRequest.getVersion(),
+            pullRequest.getFromRef() != null ? pullRequest.getFromRef().getLatestCommit() : null,
+            pullRequest.getToRef().getLatestCommit());
+    try {
+      return conflicts.get(key, () -> doHasConflicts(pullRequest));
+    } catch (final ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  private boolean doHasConflicts(final PullRequest pullRequest) {
     return securityService //
         .withPermission(ADMIN, "Can merge") //
         .call(
@@ -247,6 +430,121 @@ public class PrnfbPullRequestEventListener {
       final PrnfbRenderer renderer,
       final ClientKeyStore clientKeyStore,
       final Boolean shouldAcceptAnyCertificate) {
+    final Optional<UrlInvoker> urlInvoker =
+        prepareInvocation(
+            notification,
+            pullRequestAction,
+            pullRequest,
+            renderer,
+            clientKeyStore,
+            shouldAcceptAnyCertificate);
+    if (!urlInvoker.isPresent()) {
+      return null;
+    }
+    final String destination = destinationOf(urlInvoker.get().getUrlParam());
+    final HttpResponse httpResponse = deliver(createInvoker(), urlInvoker.get(), destination);
+    deliveryMetrics.recordOutcome(notification, destination, httpResponse, null);
+    return new NotificationResponse(notification.getUuid(), notification.getName(), httpResponse);
+  }
+
+  /**
+   * Like {@link #notify(PrnfbNotification, PrnfbPullRequestAction, PullRequest, PrnfbRenderer,
+   * ClientKeyStore, Boolean)} but only renders on the calling thread. The request is queued in the
+   * {@link DeliveryScheduler} and the future completes with null if the notification was not
+   * triggered. If it fails, it is queued in the {@link RetryService}. Outcome and retry are
+   * recorded once per sent request, a delivery replaced by a newer one is only recorded as
+   * cancelled.
+   */
+  public CompletableFuture<NotificationResponse> notifyAsync(
+      final PrnfbNotification notification,
+      final PrnfbPullRequestAction pullRequestAction,
+      final PullRequest pullRequest,
+      final PrnfbRenderer renderer,
+      final ClientKeyStore clientKeyStore,
+      final Boolean shouldAcceptAnyCertificate) {
+    final Optional<UrlInvoker> urlInvoker =
+        prepareInvocation(
+            notification,
+            pullRequestAction,
+            pullRequest,
+            renderer,
+            clientKeyStore,
+            shouldAcceptAnyCertificate);
+    if (!urlInvoker.isPresent()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    final Invoker invoker = createInvoker();
+    final String destination = destinationOf(urlInvoker.get().getUrlParam());
+    final List<Object> coalesceKey =
+        asList(
+            notification.getUuid(),
+            pullRequest.getToRef().getRepository().getId(),
+            pullRequest.getId());
+    final long queuedNanos = System.nanoTime();
+    return deliveryScheduler
+        .submit(
+            destination,
+            coalesceKey,
+            () -> {
+              deliveryMetrics.recordQueueWait(System.nanoTime() - queuedNanos);
+              return send(notification, invoker, urlInvoker.get(), destination);
+            }) //
+        .whenComplete(
+            (httpResponse, e) -> {
+              final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+              if (cause instanceof RejectedExecutionException
+                  || cause instanceof CancellationException) {
+                // Never sent, so not recorded by send
+                deliveryMetrics.recordOutcome(notification, destination, null, cause);
+              }
+            }) //
+        .thenApply(
+            httpResponse ->
+                new NotificationResponse(
+                    notification.getUuid(), notification.getName(), httpResponse));
+  }
+
+  /** Delivers and records the outcome, queues a retry if it failed. */
+  private HttpResponse send(
+      final PrnfbNotification notification,
+      final Invoker invoker,
+      final UrlInvoker urlInvoker,
+      final String destination) {
+    HttpResponse httpResponse = null;
+    Throwable error = null;
+    try {
+      httpResponse = deliver(invoker, urlInvoker, destination);
+      return httpResponse;
+    } catch (final RuntimeException | Error e) {
+      error = e;
+      throw e;
+    } finally {
+      deliveryMetrics.recordOutcome(notification, destination, httpResponse, error);
+      retryService.retryIfFailed(notification, urlInvoker, httpResponse, error);
+    }
+  }
+
+  private HttpResponse deliver(
+      final Invoker invoker, final UrlInvoker urlInvoker, final String destination) {
+    deliveryMetrics.deliveryStarted(destination);
+    HttpResponse httpResponse = null;
+    try {
+      httpResponse = invoker.invoke(urlInvoker);
+      return httpResponse;
+    } finally {
+      deliveryMetrics.deliveryFinished(destination, httpResponse);
+    }
+  }
+
+  /** @return The request to send, absent if the notification was not triggered. */
+  private Optional<UrlInvoker> prepareInvocation(
+      final PrnfbNotification notification,
+      final PrnfbPullRequestAction pullRequestAction,
+      final PullRequest pullRequest,
+      final PrnfbRenderer renderer,
+      final ClientKeyStore clientKeyStore,
+      final Boolean shouldAcceptAnyCertificate) {
+    final long startNanos = System.nanoTime();
     if (!isNotificationTriggeredByAction(
         notification,
         pullRequestAction,
@@ -254,7 +552,7 @@ public class PrnfbPullRequestEventListener {
         pullRequest,
         clientKeyStore,
         shouldAcceptAnyCertificate)) {
-      return null;
+      return absent();
     }
 
     Optional<String> postContent = absent();
@@ -298,20 +596,24 @@ public class PrnfbPullRequestEventListener {
           renderer.render(
               header.getValue(), ENCODE_FOR.NONE, clientKeyStore, shouldAcceptAnyCertificate));
     }
-    final HttpResponse httpResponse =
-        createInvoker()
-            .invoke(
-                urlInvoker //
-                    .withProxyServer(notification.getProxyServer()) //
-                    .withProxyPort(notification.getProxyPort()) //
-                    .withProxySchema(notification.getProxySchema()) //
-                    .withProxyUser(notification.getProxyUser()) //
-                    .withProxyPassword(notification.getProxyPassword()) //
-                    .shouldAcceptAnyCertificate(shouldAcceptAnyCertificate) //
-                    .setHttpVersion(notification.getHttpVersion()) //
-                );
+    urlInvoker //
+        .withProxy(notification) //
+        .shouldAcceptAnyCertificate(shouldAcceptAnyCertificate) //
+        .setHttpVersion(notification.getHttpVersion());
+    deliveryMetrics.recordRenderTime(System.nanoTime() - startNanos);
+    return of(urlInvoker);
+  }
+
+  @EventListener
+  public void onPluginDisabling(final PluginDisablingEvent event) {
+    if (isThisPlugin(event)) {
+      shutdown();
+    }
+  }
 
-    return new NotificationResponse(notification.getUuid(), notification.getName(), httpResponse);
+  /** Stops debouncing, events that are waiting are dropped. */
+  public void shutdown() {
+    debouncer.shutdown();
   }
 
   @EventListener
@@ -1,6 +1,12 @@
 package se.bjurr.prnfb.presentation;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.propagate;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Comparator.comparing;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 import static javax.ws.rs.core.Response.Status.OK;
@@ -15,12 +21,17 @@ import static se.bjurr.prnfb.transformer.ButtonTransformer.toTriggerResultDto;
 import com.atlassian.annotations.security.XsrfProtectionExcluded;
 import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.repository.Repository;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -30,8 +41,13 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 import se.bjurr.prnfb.http.NotificationResponse;
 import se.bjurr.prnfb.presentation.dto.ButtonDTO;
@@ -44,10 +60,42 @@ import se.bjurr.prnfb.service.SettingsService;
 import se.bjurr.prnfb.service.UserCheckService;
 import se.bjurr.prnfb.settings.PrnfbButton;
 import se.bjurr.prnfb.settings.USER_LEVEL;
+import se.bjurr.prnfb.transformer.ButtonTransformer;
 
 @Path("/settings/buttons")
 public class ButtonServlet {
 
+  private static class PullRequestButtons {
+    private final List<ButtonDTO> dtos;
+    private final EntityTag entityTag;
+    private final Date lastModified;
+
+    private PullRequestButtons(List<Object> key, List<ButtonDTO> dtos) {
+      this.dtos = unmodifiableList(dtos);
+      this.entityTag = new EntityTag(Integer.toHexString(asList(key, dtos).hashCode()), true);
+      // Last-Modified has second precision
+      this.lastModified = new Date(currentTimeMillis() / 1000 * 1000);
+    }
+  }
+
+  /** How long the buttons of a pull request are served without being evaluated again. */
+  private static final long PULL_REQUEST_BUTTONS_TTL_SECONDS = 10L;
+
+  /**
+   * Keyed by {@link ButtonsService#getButtonsCacheKey(Integer, Long)}. Static since the resource
+   * may be created for every request.
+   */
+  private static final Cache<List<Object>, PullRequestButtons> PULL_REQUEST_BUTTONS =
+      CacheBuilder.newBuilder() //
+          .maximumSize(1000) //
+          .expireAfterWrite(PULL_REQUEST_BUTTONS_TTL_SECONDS, SECONDS) //
+          .build();
+
+  @VisibleForTesting
+  static void invalidatePullRequestButtons() {
+    PULL_REQUEST_BUTTONS.invalidateAll();
+  }
+
   private final ButtonsService buttonsService;
   private final SettingsService settingsService;
   private final UserCheckService userCheckService;
@@ -98,14 +146,17 @@ public class ButtonServlet {
     return status(OK).build();
   }
 
+  /** Sorted by name, like {@link ButtonDTO#compareTo(ButtonDTO)}. */
   @GET
   @Produces(APPLICATION_JSON)
-  public Response get() {
+  public Response get(@QueryParam("start") Integer start, @QueryParam("limit") Integer limit) {
     final List<PrnfbButton> buttons = settingsService.getButtons();
-    final Iterable<PrnfbButton> allowedButtons = userCheckService.filterAdminAllowed(buttons);
-    final List<ButtonDTO> dtos = toButtonDtoList(allowedButtons);
-    Collections.sort(dtos);
-    return ok(dtos, APPLICATION_JSON).build();
+    final List<PrnfbButton> allowedButtons = userCheckService.filterAdminAllowed(buttons);
+    allowedButtons.sort(comparing(PrnfbButton::getName));
+    final JsonListOutput<PrnfbButton, ButtonDTO> output =
+        new JsonListOutput<>(
+            allowedButtons, start, limit, ButtonTransformer::toButtonDto, ButtonDTO.class);
+    return ok(output, APPLICATION_JSON).build();
   }
 
   public static Long parseLong(String s, long defaultVal) {
@@ -153,7 +204,7 @@ public class ButtonServlet {
   @GET
   @Path("/{s:.*}")
   @Produces(APPLICATION_JSON)
-  public Response getAllPaths(@Context UriInfo ui) {
+  public Response getAllPaths(@Context UriInfo ui, @Context Request request) {
     final String path = ui.getPath();
     String[] parsed = parsePath(path, "pull-requests");
     String project = parsed[0];
@@ -192,13 +243,13 @@ public class ButtonServlet {
     // Nothing is null - we want the pullRequestButtons
     Integer rId = r != null ? r.getId() : null;
     Long prId = parseLong(pr, -1L);
-    return getPullRequestButtons(rId, prId);
+    return getPullRequestButtons(request, rId, prId);
   }
 
   // @Path("/projectKey/{projectKey}")
   public Response getProjectButtons(Project p) {
     final List<PrnfbButton> buttons = settingsService.getButtons(p);
-    final Iterable<PrnfbButton> allowedButtons = userCheckService.filterAdminAllowed(buttons);
+    final List<PrnfbButton> allowedButtons = userCheckService.filterAdminAllowed(buttons);
     final List<ButtonDTO> dtos = toButtonDtoList(allowedButtons);
     Collections.sort(dtos);
     return ok(dtos, APPLICATION_JSON).build();
@@ -207,7 +258,7 @@ public class ButtonServlet {
   // @Path("/projectKey/{projectKey}/repositorySlug/{repositorySlug}")
   public Response getRepoButtons(Repository r) {
     final List<PrnfbButton> buttons = settingsService.getButtons(r);
-    final Iterable<PrnfbButton> allowedButtons = userCheckService.filterAdminAllowed(buttons);
+    final List<PrnfbButton> allowedButtons = userCheckService.filterAdminAllowed(buttons);
     final List<ButtonDTO> dtos = toButtonDtoList(allowedButtons);
     Collections.sort(dtos);
     return ok(dtos, APPLICATION_JSON).build();
@@ -225,15 +276,50 @@ public class ButtonServlet {
     return ok(dto, APPLICATION_JSON).build();
   }
 
+  /**
+   * The page asks for these on every load, and after approving, so they are cached for a short
+   * while and can be revalidated by the browser with ETag or Last-Modified.
+   */
   // @Path("/repository/{repositoryId}/pullrequest/{pullRequestId}")
-  public Response getPullRequestButtons(Integer repositoryId, Long pullRequestId) {
+  public Response getPullRequestButtons(Request request, Integer repositoryId, Long pullRequestId) {
+    final List<Object> key = buttonsService.getButtonsCacheKey(repositoryId, pullRequestId);
+    final PullRequestButtons buttons;
+    try {
+      buttons =
+          PULL_REQUEST_BUTTONS.get(
+              key,
+              () ->
+                  new PullRequestButtons(
+                      key, doGetPullRequestButtons(repositoryId, pullRequestId)));
+    } catch (final ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+
+    final CacheControl cacheControl = new CacheControl();
+    cacheControl.setPrivate(true);
+    cacheControl.setMaxAge(0);
+    final ResponseBuilder notModified =
+        request.evaluatePreconditions(buttons.lastModified, buttons.entityTag);
+    if (notModified != null) {
+      return notModified //
+          .cacheControl(cacheControl) //
+          .build();
+    }
+    return ok(buttons.dtos, APPLICATION_JSON) //
+        .tag(buttons.entityTag) //
+        .lastModified(buttons.lastModified) //
+        .cacheControl(cacheControl) //
+        .build();
+  }
+
+  private List<ButtonDTO> doGetPullRequestButtons(Integer repositoryId, Long pullRequestId) {
     final List<PrnfbButton> buttons = buttonsService.getButtons(repositoryId, pullRequestId);
     final List<ButtonDTO> dtos = toButtonDtoList(buttons);
     Collections.sort(dtos);
     for (final ButtonDTO dto : dtos) {
       renderButtonDtoList(repositoryId, pullRequestId, dto);
     }
-    return ok(dtos, APPLICATION_JSON).build();
+    return dtos;
   }
 
   @POST
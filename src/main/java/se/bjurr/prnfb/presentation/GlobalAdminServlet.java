@@ -4,7 +4,9 @@ import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Throwables.propagate;
 import static com.google.common.collect.ImmutableMap.of;
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
+import static se.bjurr.prnfb.http.DeliveryRecord.formatTimestamp;
 
 import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.project.ProjectService;
@@ -17,18 +19,25 @@ import com.atlassian.templaterenderer.TemplateRenderer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import java.net.URI;
+import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import se.bjurr.prnfb.http.DeliveryRecord;
+import se.bjurr.prnfb.http.DeliveryScheduler;
 import se.bjurr.prnfb.http.HttpUtil;
+import se.bjurr.prnfb.service.RetryEntry;
+import se.bjurr.prnfb.service.RetryService;
 import se.bjurr.prnfb.service.UserCheckService;
 
 public class GlobalAdminServlet extends HttpServlet {
   private static final long serialVersionUID = 3846987953228399693L;
+  private final DeliveryScheduler deliveryScheduler;
   private final LoginUriProvider loginUriProvider;
   private final TemplateRenderer renderer;
   private final RepositoryService repositoryService;
+  private final RetryService retryService;
   private final ProjectService projectService;
   private final UserCheckService userCheckService;
   private final UserManager userManager;
@@ -39,13 +48,17 @@ public class GlobalAdminServlet extends HttpServlet {
       TemplateRenderer renderer,
       RepositoryService repositoryService,
       UserCheckService userCheckService,
-      ProjectService projectService) {
+      ProjectService projectService,
+      DeliveryScheduler deliveryScheduler,
+      RetryService retryService) {
     this.userManager = userManager;
     this.loginUriProvider = loginUriProvider;
     this.renderer = renderer;
     this.repositoryService = repositoryService;
     this.userCheckService = userCheckService;
     this.projectService = projectService;
+    this.deliveryScheduler = deliveryScheduler;
+    this.retryService = retryService;
   }
 
   @Override
@@ -82,7 +95,12 @@ public class GlobalAdminServlet extends HttpServlet {
       if ("y".equalsIgnoreCase(trace)) {
         String refresh = request.getParameter("refresh");
         String refreshSuccess = request.getParameter("refreshSuccess");
-        if ("y".equalsIgnoreCase(refresh)) {
+        String clearDeadLetters = request.getParameter("clearDeadLetters");
+        if ("y".equalsIgnoreCase(clearDeadLetters) && isSystemAdmin) {
+          this.retryService.clearDeadLetters();
+          response.sendRedirect("./admin?trace=y");
+          return;
+        } else if ("y".equalsIgnoreCase(refresh)) {
           HttpUtil.reset();
           response.sendRedirect("./admin?trace=y&refreshSuccess=y");
           return;
@@ -91,10 +109,15 @@ public class GlobalAdminServlet extends HttpServlet {
         } else {
           context.put("refreshResult", "");
         }
-        context.put("successes", HttpUtil.LAST_25_SUCCESSES.values());
-        context.put("failures", HttpUtil.LAST_25_FAILURES.values());
-        context.put("errors", HttpUtil.LAST_25_ERRORS.values());
-        context.put("in_flight", HttpUtil.LAST_25_IN_FLIGHT.values());
+        context.put("history", HttpUtil.SUCCESSES.getCapacity());
+        context.put("successes", toDeliveryRows(HttpUtil.SUCCESSES.getLatest()));
+        context.put("failures", toDeliveryRows(HttpUtil.FAILURES.getLatest()));
+        context.put("errors", toDeliveryRows(HttpUtil.ERRORS.getLatest()));
+        context.put("in_flight", toDeliveryRows(HttpUtil.getInFlight()));
+        context.put("queued", this.deliveryScheduler.getQueued());
+        context.put("retrying", this.retryService.getPending().size());
+        context.put("dead_letters", toRows(this.retryService.getDeadLetters()));
+        context.put("isSystemAdmin", isSystemAdmin);
         response.setContentType("text/html;charset=UTF-8");
         this.renderer.render("debug.vm", context, response.getWriter());
         return;
@@ -135,6 +158,30 @@ public class GlobalAdminServlet extends HttpServlet {
     }
   }
 
+  private List<String[]> toRows(List<RetryEntry> entries) {
+    List<String[]> rows = newArrayList();
+    for (RetryEntry entry : entries) {
+      rows.add(
+          new String[] {
+            formatTimestamp(entry.getLastAttempt()),
+            entry.getNotificationName(),
+            entry.getMethod().name(),
+            entry.getUrl(),
+            "" + entry.getAttempts(),
+            entry.getLastError()
+          });
+    }
+    return rows;
+  }
+
+  private List<String[]> toDeliveryRows(List<DeliveryRecord> records) {
+    List<String[]> rows = newArrayList();
+    for (DeliveryRecord record : records) {
+      rows.add(record.toRow());
+    }
+    return rows;
+  }
+
   private URI getUri(HttpServletRequest request) {
     StringBuffer builder = request.getRequestURL();
     if (request.getQueryString() != null) {
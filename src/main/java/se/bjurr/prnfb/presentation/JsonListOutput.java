@@ -0,0 +1,51 @@
+package se.bjurr.prnfb.presentation;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.function.Function;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a page of entities as a JSON array. Each entity is transformed to its DTO when it is
+ * written, so the DTOs of a long list are never all in memory at once.
+ */
+class JsonListOutput<T, D> implements StreamingOutput {
+  private static final Gson gson = new Gson();
+
+  private final List<T> entities;
+  private final Function<T, D> transformer;
+  private final Class<D> type;
+
+  /**
+   * @param start First entity to write, from 0. Null to start from the first.
+   * @param limit Max number of entities to write. Null to write all.
+   */
+  JsonListOutput(
+      List<T> entities, Integer start, Integer limit, Function<T, D> transformer, Class<D> type) {
+    final int from = min(max(start != null ? start : 0, 0), entities.size());
+    final int to =
+        limit != null ? from + min(max(limit, 0), entities.size() - from) : entities.size();
+    this.entities = entities.subList(from, to);
+    this.transformer = transformer;
+    this.type = type;
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    final JsonWriter writer = new JsonWriter(new OutputStreamWriter(output, UTF_8));
+    writer.beginArray();
+    for (final T entity : entities) {
+      gson.toJson(transformer.apply(entity), type, writer);
+    }
+    writer.endArray();
+    writer.flush();
+  }
+}
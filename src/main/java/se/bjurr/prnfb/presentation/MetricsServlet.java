@@ -0,0 +1,40 @@
+package se.bjurr.prnfb.presentation;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
+import static javax.ws.rs.core.Response.ok;
+import static javax.ws.rs.core.Response.status;
+import static se.bjurr.prnfb.transformer.MetricsTransformer.toDto;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+import se.bjurr.prnfb.http.DeliveryMetrics;
+import se.bjurr.prnfb.presentation.dto.DeliveryMetricsDTO;
+import se.bjurr.prnfb.service.UserCheckService;
+
+@Path("/metrics")
+public class MetricsServlet {
+  private final DeliveryMetrics deliveryMetrics;
+  private final UserCheckService userCheckService;
+
+  public MetricsServlet(UserCheckService userCheckService, DeliveryMetrics deliveryMetrics) {
+    this.userCheckService = userCheckService;
+    this.deliveryMetrics = deliveryMetrics;
+  }
+
+  /** Names every notification, host and route, so only system administrators may see it. */
+  @GET
+  @Produces(APPLICATION_JSON)
+  public Response get() {
+    if (!this.userCheckService.isViewAllowed()
+        || !this.userCheckService.isSystemAdmin(this.userCheckService.getUserKey())) {
+      return status(UNAUTHORIZED).build();
+    }
+
+    final DeliveryMetricsDTO dto = toDto(this.deliveryMetrics);
+
+    return ok(dto).build();
+  }
+}
@@ -1,17 +1,16 @@
 package se.bjurr.prnfb.presentation;
 
 import static com.google.common.base.Throwables.propagate;
+import static java.util.Comparator.comparing;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.Response.Status.OK;
 import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
 import static javax.ws.rs.core.Response.ok;
 import static javax.ws.rs.core.Response.status;
 import static se.bjurr.prnfb.transformer.NotificationTransformer.toNotificationDto;
-import static se.bjurr.prnfb.transformer.NotificationTransformer.toNotificationDtoList;
 import static se.bjurr.prnfb.transformer.NotificationTransformer.toPrnfbNotification;
 
 import com.atlassian.annotations.security.XsrfProtectionExcluded;
-import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import javax.ws.rs.Consumes;
@@ -21,12 +20,14 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 import se.bjurr.prnfb.presentation.dto.NotificationDTO;
 import se.bjurr.prnfb.service.SettingsService;
 import se.bjurr.prnfb.service.UserCheckService;
 import se.bjurr.prnfb.settings.PrnfbNotification;
 import se.bjurr.prnfb.settings.USER_LEVEL;
+import se.bjurr.prnfb.transformer.NotificationTransformer;
 
 @Path("/settings/notifications")
 public class NotificationServlet {
@@ -78,25 +79,20 @@ public class NotificationServlet {
 
   @GET
   @Produces(APPLICATION_JSON)
-  public Response get() {
+  public Response get(@QueryParam("start") Integer start, @QueryParam("limit") Integer limit) {
     final List<PrnfbNotification> notifications = this.settingsService.getNotifications();
-    final Iterable<PrnfbNotification> notificationsFiltered =
-        userCheckService.filterAdminAllowed(notifications);
-    final List<NotificationDTO> dtos = toNotificationDtoList(notificationsFiltered);
-    Collections.sort(dtos);
-    return ok(dtos).build();
+    return streamed(notifications, start, limit);
   }
 
   @GET
   @Path("/projects/{projectKey}")
   @Produces(APPLICATION_JSON)
-  public Response get(@PathParam("projectKey") String projectKey) {
+  public Response get(
+      @PathParam("projectKey") String projectKey,
+      @QueryParam("start") Integer start,
+      @QueryParam("limit") Integer limit) {
     final List<PrnfbNotification> notifications = this.settingsService.getNotifications(projectKey);
-    final Iterable<PrnfbNotification> notificationsFiltered =
-        userCheckService.filterAdminAllowed(notifications);
-    final List<NotificationDTO> dtos = toNotificationDtoList(notificationsFiltered);
-    Collections.sort(dtos);
-    return ok(dtos).build();
+    return streamed(notifications, start, limit);
   }
 
   @GET
@@ -104,14 +100,28 @@ public class NotificationServlet {
   @Produces(APPLICATION_JSON)
   public Response get(
       @PathParam("projectKey") String projectKey,
-      @PathParam("repositorySlug") String repositorySlug) {
+      @PathParam("repositorySlug") String repositorySlug,
+      @QueryParam("start") Integer start,
+      @QueryParam("limit") Integer limit) {
     final List<PrnfbNotification> notifications =
         this.settingsService.getNotifications(projectKey, repositorySlug);
-    final Iterable<PrnfbNotification> notificationsFiltered =
+    return streamed(notifications, start, limit);
+  }
+
+  /** Sorted by name, like {@link NotificationDTO#compareTo(NotificationDTO)}. */
+  private Response streamed(List<PrnfbNotification> notifications, Integer start, Integer limit) {
+    final List<PrnfbNotification> notificationsFiltered =
         userCheckService.filterAdminAllowed(notifications);
-    final List<NotificationDTO> dtos = toNotificationDtoList(notificationsFiltered);
-    Collections.sort(dtos);
-    return ok(dtos).build();
+    notificationsFiltered.sort(comparing(PrnfbNotification::getName));
+    return ok(
+            new JsonListOutput<>(
+                notificationsFiltered,
+                start,
+                limit,
+                NotificationTransformer::toNotificationDto,
+                NotificationDTO.class),
+            APPLICATION_JSON)
+        .build();
   }
 
   @GET
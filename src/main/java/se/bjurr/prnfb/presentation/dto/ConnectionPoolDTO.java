@@ -0,0 +1,48 @@
+package se.bjurr.prnfb.presentation.dto;
+
+import static javax.xml.bind.annotation.XmlAccessType.FIELD;
+
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(FIELD)
+public class ConnectionPoolDTO {
+
+  private int available;
+  private int leased;
+  private int max;
+  private int pending;
+
+  public int getAvailable() {
+    return this.available;
+  }
+
+  public int getLeased() {
+    return this.leased;
+  }
+
+  public int getMax() {
+    return this.max;
+  }
+
+  public int getPending() {
+    return this.pending;
+  }
+
+  public void setAvailable(int available) {
+    this.available = available;
+  }
+
+  public void setLeased(int leased) {
+    this.leased = leased;
+  }
+
+  public void setMax(int max) {
+    this.max = max;
+  }
+
+  public void setPending(int pending) {
+    this.pending = pending;
+  }
+}
@@ -0,0 +1,66 @@
+package se.bjurr.prnfb.presentation.dto;
+
+import static javax.xml.bind.annotation.XmlAccessType.FIELD;
+
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(FIELD)
+public class DeliveryCountersDTO {
+
+  private long delivered;
+  private long errors;
+  private long failed;
+  private int inFlight;
+  private String name;
+  private long rejected;
+
+  public long getDelivered() {
+    return this.delivered;
+  }
+
+  public long getErrors() {
+    return this.errors;
+  }
+
+  public long getFailed() {
+    return this.failed;
+  }
+
+  public int getInFlight() {
+    return this.inFlight;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public long getRejected() {
+    return this.rejected;
+  }
+
+  public void setDelivered(long delivered) {
+    this.delivered = delivered;
+  }
+
+  public void setErrors(long errors) {
+    this.errors = errors;
+  }
+
+  public void setFailed(long failed) {
+    this.failed = failed;
+  }
+
+  public void setInFlight(int inFlight) {
+    this.inFlight = inFlight;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public void setRejected(long rejected) {
+    this.rejected = rejected;
+  }
+}
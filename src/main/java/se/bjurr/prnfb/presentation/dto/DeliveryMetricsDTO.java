@@ -0,0 +1,87 @@
+package se.bjurr.prnfb.presentation.dto;
+
+import static javax.xml.bind.annotation.XmlAccessType.FIELD;
+
+import java.util.Map;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(FIELD)
+public class DeliveryMetricsDTO {
+
+  /** Keyed by route. */
+  private Map<String, ConnectionPoolDTO> connections;
+  private LatencyDTO connectTime;
+  private Map<String, DeliveryCountersDTO> hosts;
+  /** Keyed by notification UUID. */
+  private Map<String, DeliveryCountersDTO> notifications;
+  private Map<String, Integer> queued;
+  private LatencyDTO queueWait;
+  private LatencyDTO renderTime;
+  private LatencyDTO responseTime;
+
+  public Map<String, ConnectionPoolDTO> getConnections() {
+    return this.connections;
+  }
+
+  public LatencyDTO getConnectTime() {
+    return this.connectTime;
+  }
+
+  public Map<String, DeliveryCountersDTO> getHosts() {
+    return this.hosts;
+  }
+
+  public Map<String, DeliveryCountersDTO> getNotifications() {
+    return this.notifications;
+  }
+
+  public Map<String, Integer> getQueued() {
+    return this.queued;
+  }
+
+  public LatencyDTO getQueueWait() {
+    return this.queueWait;
+  }
+
+  public LatencyDTO getRenderTime() {
+    return this.renderTime;
+  }
+
+  public LatencyDTO getResponseTime() {
+    return this.responseTime;
+  }
+
+  public void setConnections(Map<String, ConnectionPoolDTO> connections) {
+    this.connections = connections;
+  }
+
+  public void setConnectTime(LatencyDTO connectTime) {
+    this.connectTime = connectTime;
+  }
+
+  public void setHosts(Map<String, DeliveryCountersDTO> hosts) {
+    this.hosts = hosts;
+  }
+
+  public void setNotifications(Map<String, DeliveryCountersDTO> notifications) {
+    this.notifications = notifications;
+  }
+
+  public void setQueued(Map<String, Integer> queued) {
+    this.queued = queued;
+  }
+
+  public void setQueueWait(LatencyDTO queueWait) {
+    this.queueWait = queueWait;
+  }
+
+  public void setRenderTime(LatencyDTO renderTime) {
+    this.renderTime = renderTime;
+  }
+
+  public void setResponseTime(LatencyDTO responseTime) {
+    this.responseTime = responseTime;
+  }
+}
@@ -0,0 +1,66 @@
+package se.bjurr.prnfb.presentation.dto;
+
+import static javax.xml.bind.annotation.XmlAccessType.FIELD;
+
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(FIELD)
+public class LatencyDTO {
+
+  private long count;
+  private double maxMillis;
+  private double meanMillis;
+  private double p50Millis;
+  private double p90Millis;
+  private double p99Millis;
+
+  public long getCount() {
+    return this.count;
+  }
+
+  public double getMaxMillis() {
+    return this.maxMillis;
+  }
+
+  public double getMeanMillis() {
+    return this.meanMillis;
+  }
+
+  public double getP50Millis() {
+    return this.p50Millis;
+  }
+
+  public double getP90Millis() {
+    return this.p90Millis;
+  }
+
+  public double getP99Millis() {
+    return this.p99Millis;
+  }
+
+  public void setCount(long count) {
+    this.count = count;
+  }
+
+  public void setMaxMillis(double maxMillis) {
+    this.maxMillis = maxMillis;
+  }
+
+  public void setMeanMillis(double meanMillis) {
+    this.meanMillis = meanMillis;
+  }
+
+  public void setP50Millis(double p50Millis) {
+    this.p50Millis = p50Millis;
+  }
+
+  public void setP90Millis(double p90Millis) {
+    this.p90Millis = p90Millis;
+  }
+
+  public void setP99Millis(double p99Millis) {
+    this.p99Millis = p99Millis;
+  }
+}
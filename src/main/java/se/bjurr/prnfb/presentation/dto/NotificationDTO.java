@@ -42,6 +42,9 @@ public class NotificationDTO implements Comparable<NotificationDTO>, Restricted
   private UUID uuid;
   private ENCODE_FOR postContentEncoding;
   private String httpVersion;
+  private Integer debounceSeconds;
+  private Integer retryBackoffSeconds;
+  private Integer retryMaxAttempts;
 
   public void setPostContentEncoding(final ENCODE_FOR postContentEncoding) {
     this.postContentEncoding = postContentEncoding;
@@ -189,6 +192,27 @@ public class NotificationDTO implements Comparable<NotificationDTO>, Restricted
     } else if (!proxyUser.equals(other.proxyUser)) {
       return false;
     }
+    if (retryMaxAttempts == null) {
+      if (other.retryMaxAttempts != null) {
+        return false;
+      }
+    } else if (!retryMaxAttempts.equals(other.retryMaxAttempts)) {
+      return false;
+    }
+    if (retryBackoffSeconds == null) {
+      if (other.retryBackoffSeconds != null) {
+        return false;
+      }
+    } else if (!retryBackoffSeconds.equals(other.retryBackoffSeconds)) {
+      return false;
+    }
+    if (debounceSeconds == null) {
+      if (other.debounceSeconds != null) {
+        return false;
+      }
+    } else if (!debounceSeconds.equals(other.debounceSeconds)) {
+      return false;
+    }
     if (repositorySlug == null) {
       if (other.repositorySlug != null) {
         return false;
@@ -362,6 +386,9 @@ public class NotificationDTO implements Comparable<NotificationDTO>, Restricted
     result = prime * result + (proxyServer == null ? 0 : proxyServer.hashCode());
     result = prime * result + (proxyUser == null ? 0 : proxyUser.hashCode());
     result = prime * result + (repositorySlug == null ? 0 : repositorySlug.hashCode());
+    result = prime * result + (debounceSeconds == null ? 0 : debounceSeconds.hashCode());
+    result = prime * result + (retryBackoffSeconds == null ? 0 : retryBackoffSeconds.hashCode());
+    result = prime * result + (retryMaxAttempts == null ? 0 : retryMaxAttempts.hashCode());
     result = prime * result + (triggerIfCanMerge == null ? 0 : triggerIfCanMerge.hashCode());
     result =
         prime * result + (triggerIgnoreStateList == null ? 0 : triggerIgnoreStateList.hashCode());
@@ -489,6 +516,30 @@ public class NotificationDTO implements Comparable<NotificationDTO>, Restricted
     this.httpVersion = httpVersion;
   }
 
+  public Integer getRetryMaxAttempts() {
+    return retryMaxAttempts;
+  }
+
+  public void setRetryMaxAttempts(final Integer retryMaxAttempts) {
+    this.retryMaxAttempts = retryMaxAttempts;
+  }
+
+  public Integer getRetryBackoffSeconds() {
+    return retryBackoffSeconds;
+  }
+
+  public void setRetryBackoffSeconds(final Integer retryBackoffSeconds) {
+    this.retryBackoffSeconds = retryBackoffSeconds;
+  }
+
+  public Integer getDebounceSeconds() {
+    return debounceSeconds;
+  }
+
+  public void setDebounceSeconds(final Integer debounceSeconds) {
+    this.debounceSeconds = debounceSeconds;
+  }
+
   @Override
   public String toString() {
     return "NotificationDTO [filterRegexp="
@@ -545,6 +596,12 @@ public class NotificationDTO implements Comparable<NotificationDTO>, Restricted
         + postContentEncoding
         + ", httpVersion="
         + httpVersion
+        + ", retryMaxAttempts="
+        + retryMaxAttempts
+        + ", retryBackoffSeconds="
+        + retryBackoffSeconds
+        + ", debounceSeconds="
+        + debounceSeconds
         + "]";
   }
 }
@@ -4,6 +4,7 @@ import static javax.xml.bind.annotation.XmlAccessType.FIELD;
 
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
+import se.bjurr.prnfb.settings.DELIVERY_OVERFLOW;
 import se.bjurr.prnfb.settings.USER_LEVEL;
 
 @XmlRootElement
@@ -11,6 +12,12 @@ import se.bjurr.prnfb.settings.USER_LEVEL;
 public class SettingsDataDTO {
 
   private USER_LEVEL adminRestriction;
+  private Integer deliveryConnectionsPerHost;
+  private Integer deliveryConnectionsTotal;
+  private Integer deliveryHistorySize;
+  private DELIVERY_OVERFLOW deliveryOverflow;
+  private Integer deliveryQueueSize;
+  private Integer deliveryWorkers;
   private String keyStore;
   private String keyStorePassword;
   private String keyStoreType;
@@ -31,6 +38,44 @@ public class SettingsDataDTO {
     if (this.adminRestriction != other.adminRestriction) {
       return false;
     }
+    if (this.deliveryConnectionsPerHost == null) {
+      if (other.deliveryConnectionsPerHost != null) {
+        return false;
+      }
+    } else if (!this.deliveryConnectionsPerHost.equals(other.deliveryConnectionsPerHost)) {
+      return false;
+    }
+    if (this.deliveryConnectionsTotal == null) {
+      if (other.deliveryConnectionsTotal != null) {
+        return false;
+      }
+    } else if (!this.deliveryConnectionsTotal.equals(other.deliveryConnectionsTotal)) {
+      return false;
+    }
+    if (this.deliveryHistorySize == null) {
+      if (other.deliveryHistorySize != null) {
+        return false;
+      }
+    } else if (!this.deliveryHistorySize.equals(other.deliveryHistorySize)) {
+      return false;
+    }
+    if (this.deliveryOverflow != other.deliveryOverflow) {
+      return false;
+    }
+    if (this.deliveryQueueSize == null) {
+      if (other.deliveryQueueSize != null) {
+        return false;
+      }
+    } else if (!this.deliveryQueueSize.equals(other.deliveryQueueSize)) {
+      return false;
+    }
+    if (this.deliveryWorkers == null) {
+      if (other.deliveryWorkers != null) {
+        return false;
+      }
+    } else if (!this.deliveryWorkers.equals(other.deliveryWorkers)) {
+      return false;
+    }
     if (this.keyStore == null) {
       if (other.keyStore != null) {
         return false;
@@ -62,6 +107,30 @@ public class SettingsDataDTO {
     return this.adminRestriction;
   }
 
+  public Integer getDeliveryConnectionsPerHost() {
+    return this.deliveryConnectionsPerHost;
+  }
+
+  public Integer getDeliveryConnectionsTotal() {
+    return this.deliveryConnectionsTotal;
+  }
+
+  public Integer getDeliveryHistorySize() {
+    return this.deliveryHistorySize;
+  }
+
+  public DELIVERY_OVERFLOW getDeliveryOverflow() {
+    return this.deliveryOverflow;
+  }
+
+  public Integer getDeliveryQueueSize() {
+    return this.deliveryQueueSize;
+  }
+
+  public Integer getDeliveryWorkers() {
+    return this.deliveryWorkers;
+  }
+
   public String getKeyStore() {
     return this.keyStore;
   }
@@ -80,6 +149,25 @@ public class SettingsDataDTO {
     int result = 1;
     result =
         prime * result + ((this.adminRestriction == null) ? 0 : this.adminRestriction.hashCode());
+    result =
+        prime * result
+            + ((this.deliveryConnectionsPerHost == null)
+                ? 0
+                : this.deliveryConnectionsPerHost.hashCode());
+    result =
+        prime * result
+            + ((this.deliveryConnectionsTotal == null)
+                ? 0
+                : this.deliveryConnectionsTotal.hashCode());
+    result =
+        prime * result
+            + ((this.deliveryHistorySize == null) ? 0 : this.deliveryHistorySize.hashCode());
+    result =
+        prime * result + ((this.deliveryOverflow == null) ? 0 : this.deliveryOverflow.hashCode());
+    result =
+        prime * result + ((this.deliveryQueueSize == null) ? 0 : this.deliveryQueueSize.hashCode());
+    result =
+        prime * result + ((this.deliveryWorkers == null) ? 0 : this.deliveryWorkers.hashCode());
     result = prime * result + ((this.keyStore == null) ? 0 : this.keyStore.hashCode());
     result =
         prime * result + ((this.keyStorePassword == null) ? 0 : this.keyStorePassword.hashCode());
@@ -96,6 +184,30 @@ public class SettingsDataDTO {
     this.adminRestriction = adminRestriction;
   }
 
+  public void setDeliveryConnectionsPerHost(Integer deliveryConnectionsPerHost) {
+    this.deliveryConnectionsPerHost = deliveryConnectionsPerHost;
+  }
+
+  public void setDeliveryConnectionsTotal(Integer deliveryConnectionsTotal) {
+    this.deliveryConnectionsTotal = deliveryConnectionsTotal;
+  }
+
+  public void setDeliveryHistorySize(Integer deliveryHistorySize) {
+    this.deliveryHistorySize = deliveryHistorySize;
+  }
+
+  public void setDeliveryOverflow(DELIVERY_OVERFLOW deliveryOverflow) {
+    this.deliveryOverflow = deliveryOverflow;
+  }
+
+  public void setDeliveryQueueSize(Integer deliveryQueueSize) {
+    this.deliveryQueueSize = deliveryQueueSize;
+  }
+
+  public void setDeliveryWorkers(Integer deliveryWorkers) {
+    this.deliveryWorkers = deliveryWorkers;
+  }
+
   public void setKeyStore(String keyStore) {
     this.keyStore = keyStore;
   }
@@ -116,6 +228,18 @@ public class SettingsDataDTO {
   public String toString() {
     return "SettingsDataDTO [adminRestriction="
         + this.adminRestriction
+        + ", deliveryConnectionsPerHost="
+        + this.deliveryConnectionsPerHost
+        + ", deliveryConnectionsTotal="
+        + this.deliveryConnectionsTotal
+        + ", deliveryHistorySize="
+        + this.deliveryHistorySize
+        + ", deliveryOverflow="
+        + this.deliveryOverflow
+        + ", deliveryQueueSize="
+        + this.deliveryQueueSize
+        + ", deliveryWorkers="
+        + this.deliveryWorkers
         + ", keyStore="
         + this.keyStore
         + ", keyStorePassword="
@@ -4,14 +4,27 @@ import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Ordering.usingToString;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static se.bjurr.prnfb.http.ClientKeyStore.clientKeyStore;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.BUTTON_TRIGGER;
+import static se.bjurr.prnfb.service.PrnfbVariable.BUTTON_TRIGGER_TITLE;
+import static se.bjurr.prnfb.service.PrnfbVariable.EVERYTHING_URL;
 
+import com.atlassian.bitbucket.event.pull.PullRequestCommentEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestParticipantStatusUpdatedEvent;
 import com.atlassian.bitbucket.pull.PullRequest;
 import com.atlassian.bitbucket.pull.PullRequestService;
 import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.event.api.EventListener;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import se.bjurr.prnfb.http.ClientKeyStore;
 import se.bjurr.prnfb.http.NotificationResponse;
 import se.bjurr.prnfb.listener.PrnfbPullRequestAction;
@@ -23,6 +36,16 @@ import se.bjurr.prnfb.settings.PrnfbSettingsData;
 
 public class ButtonsService {
 
+  /**
+   * Approvals and comments do not change the version of a pull request, but may change which
+   * buttons are shown. Keyed by repository and pull request, kept longer than buttons are cached.
+   */
+  private final Cache<List<Object>, Long> activity =
+      CacheBuilder.newBuilder() //
+          .expireAfterWrite(1, MINUTES) //
+          .build();
+
+  private final AtomicLong activityCounter = new AtomicLong();
   private final PrnfbPullRequestEventListener prnfbPullRequestEventListener;
   private final PrnfbRendererFactory prnfbRendererFactory;
   private final PullRequestService pullRequestService;
@@ -51,24 +74,51 @@ public class ButtonsService {
 
     String projectKey = pullRequest.getToRef().getRepository().getProject().getKey();
     String repositoryKey = pullRequest.getToRef().getRepository().getSlug();
+    PrnfbPullRequestAction pullRequestAction = BUTTON_TRIGGER;
+    Supplier<Boolean> isConflicted = prnfbPullRequestEventListener.conflictsOf(pullRequest);
+
+    // Only notifications that use the button title need to be checked once per button
+    List<PrnfbNotification> buttonNotifications = newArrayList();
+    List<PrnfbNotification> sharedNotifications = newArrayList();
+    for (PrnfbNotification notification : notifications) {
+      if (isUsingButton(notification)) {
+        buttonNotifications.add(notification);
+      } else {
+        sharedNotifications.add(notification);
+      }
+    }
+    Boolean sharedTriggered = null;
+
     List<PrnfbButton> allFoundButtons = newArrayList();
     for (PrnfbButton candidate : settingsService.getButtons()) {
-      PrnfbButton button = settingsService.getButton(candidate.getUuid());
+      if (!userCheckService.isAllowed(candidate.getUserLevel(), projectKey, repositoryKey) //
+          || !isVisibleOnPullRequest(candidate, pullRequest)) {
+        continue;
+      }
+      if (sharedTriggered == null) {
+        sharedTriggered =
+            isTriggeredByAction(
+                clientKeyStore,
+                sharedNotifications,
+                shouldAcceptAnyCertificate,
+                pullRequestAction,
+                pullRequest,
+                new VariablesContextBuilder().build(),
+                isConflicted);
+      }
       VariablesContext variables =
           new VariablesContextBuilder() //
-              .setButton(button) //
+              .setButton(candidate) //
               .build();
-
-      PrnfbPullRequestAction pullRequestAction = BUTTON_TRIGGER;
-      if (userCheckService.isAllowed(candidate.getUserLevel(), projectKey, repositoryKey) //
-          && isTriggeredByAction(
+      if (sharedTriggered
+          || isTriggeredByAction(
               clientKeyStore,
-              notifications,
+              buttonNotifications,
               shouldAcceptAnyCertificate,
               pullRequestAction,
               pullRequest,
-              variables) //
-          && isVisibleOnPullRequest(candidate, pullRequest)) {
+              variables,
+              isConflicted)) {
         allFoundButtons.add(candidate);
       }
     }
@@ -122,16 +172,48 @@ public class ButtonsService {
   public List<PrnfbButton> getButtons(Integer repositoryId, Long pullRequestId) {
     final PrnfbSettingsData settings = settingsService.getPrnfbSettingsData();
     List<PrnfbNotification> notifications = settingsService.getNotifications();
-    ClientKeyStore clientKeyStore = new ClientKeyStore(settings);
+    ClientKeyStore clientKeyStore = clientKeyStore(settings);
     final PullRequest pullRequest = pullRequestService.getById(repositoryId, pullRequestId);
     boolean shouldAcceptAnyCertificate = settings.isShouldAcceptAnyCertificate();
     return doGetButtons(notifications, clientKeyStore, pullRequest, shouldAcceptAnyCertificate);
   }
 
+  /**
+   * Identifies the buttons of the pull request as seen by the current user. Changes when the pull
+   * request, its participants or comments, or the settings, are changed.
+   */
+  public List<Object> getButtonsCacheKey(Integer repositoryId, Long pullRequestId) {
+    final PullRequest pullRequest = pullRequestService.getById(repositoryId, pullRequestId);
+    return asList(
+        repositoryId,
+        pullRequestId,
+        pullRequest != null ? pullRequest.getVersion() : null,
+        activity.getIfPresent(asList(repositoryId, pullRequestId)),
+        userCheckService.getUserKey(),
+        settingsService.getSettingsVersion());
+  }
+
+  @EventListener
+  public void onEvent(final PullRequestParticipantStatusUpdatedEvent e) {
+    changed(e);
+  }
+
+  @EventListener
+  public void onEvent(final PullRequestCommentEvent e) {
+    changed(e);
+  }
+
+  private void changed(final PullRequestEvent e) {
+    final PullRequest pullRequest = e.getPullRequest();
+    activity.put(
+        asList(pullRequest.getToRef().getRepository().getId(), pullRequest.getId()),
+        activityCounter.incrementAndGet());
+  }
+
   public PrnfbRendererWrapper getRenderer(
       Integer repositoryId, Long pullRequestId, UUID buttonUuid) {
     final PrnfbSettingsData settings = settingsService.getPrnfbSettingsData();
-    ClientKeyStore clientKeyStore = new ClientKeyStore(settings);
+    ClientKeyStore clientKeyStore = clientKeyStore(settings);
     final PullRequest pullRequest = pullRequestService.getById(repositoryId, pullRequestId);
     boolean shouldAcceptAnyCertificate = settings.isShouldAcceptAnyCertificate();
 
@@ -152,7 +234,7 @@ public class ButtonsService {
   public List<NotificationResponse> handlePressed(
       Integer repositoryId, Long pullRequestId, UUID buttonUuid, String formData) {
     final PrnfbSettingsData prnfbSettingsData = settingsService.getPrnfbSettingsData();
-    ClientKeyStore clientKeyStore = new ClientKeyStore(prnfbSettingsData);
+    ClientKeyStore clientKeyStore = clientKeyStore(prnfbSettingsData);
     boolean shouldAcceptAnyCertificate = prnfbSettingsData.isShouldAcceptAnyCertificate();
     final PullRequest pullRequest = pullRequestService.getById(repositoryId, pullRequestId);
     return doHandlePressed(
@@ -165,7 +247,8 @@ public class ButtonsService {
       boolean shouldAcceptAnyCertificate,
       PrnfbPullRequestAction pullRequestAction,
       PullRequest pullRequest,
-      VariablesContext variables) {
+      VariablesContext variables,
+      Supplier<Boolean> isConflicted) {
     for (PrnfbNotification prnfbNotification : notifications) {
       PrnfbRenderer renderer =
           prnfbRendererFactory.create(pullRequest, pullRequestAction, prnfbNotification, variables);
@@ -175,7 +258,25 @@ public class ButtonsService {
           renderer,
           pullRequest,
           clientKeyStore,
-          shouldAcceptAnyCertificate)) {
+          shouldAcceptAnyCertificate,
+          isConflicted)) {
+        return TRUE;
+      }
+    }
+    return FALSE;
+  }
+
+  /**
+   * Checks if the outcome of the notification may depend on the button, that is if anything
+   * rendered when checking it refers to {@link PrnfbVariable#BUTTON_TRIGGER_TITLE}, or to {@link
+   * PrnfbVariable#EVERYTHING_URL} that contains it.
+   */
+  @VisibleForTesting
+  static boolean isUsingButton(PrnfbNotification notification) {
+    for (PrnfbVariable variable : asList(BUTTON_TRIGGER_TITLE, EVERYTHING_URL)) {
+      if (notification.getFilterString().or("").contains(variable.name())
+          || notification.getInjectionUrl().or("").contains(variable.name())
+          || notification.getVariableName().or("").contains(variable.name())) {
         return TRUE;
       }
     }
@@ -0,0 +1,15 @@
+package se.bjurr.prnfb.service;
+
+import com.atlassian.plugin.event.events.PluginDisablingEvent;
+
+public final class PrnfbPlugin {
+  /** Same as in atlassian-plugin.xml. */
+  public static final String PLUGIN_KEY = "se.bjurr.prnfs.pull-request-notifier-for-stash";
+
+  /** Disabling events are sent for every plugin, only this plugin should stop its threads. */
+  public static boolean isThisPlugin(final PluginDisablingEvent event) {
+    return event.getPlugin() != null && PLUGIN_KEY.equals(event.getPlugin().getKey());
+  }
+
+  private PrnfbPlugin() {}
+}
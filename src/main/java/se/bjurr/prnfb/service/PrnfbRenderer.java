@@ -3,13 +3,11 @@ package se.bjurr.prnfb.service;
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.base.Throwables.propagate;
-import static java.net.URLEncoder.encode;
 import static org.slf4j.LoggerFactory.getLogger;
 import static se.bjurr.prnfb.service.JsonEscaper.jsonEscape;
 import static se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR.HTML;
 import static se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR.JSON;
 import static se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR.URL;
-import static se.bjurr.prnfb.service.PrnfbVariable.EVERYTHING_URL;
 
 import com.atlassian.bitbucket.pull.PullRequest;
 import com.atlassian.bitbucket.repository.RepositoryService;
@@ -19,8 +17,8 @@ import com.atlassian.bitbucket.user.SecurityService;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
 import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.Map;
-import java.util.regex.Matcher;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import se.bjurr.prnfb.http.ClientKeyStore;
@@ -50,6 +48,29 @@ public class PrnfbRenderer {
    */
   private final Map<PrnfbVariable, Supplier<String>> variables;
 
+  private final PrnfbVariableCache variableCache;
+
+  PrnfbRenderer(
+      PullRequest pullRequest,
+      PrnfbPullRequestAction pullRequestAction,
+      ApplicationUser applicationUser,
+      RepositoryService repositoryService,
+      ApplicationPropertiesService propertiesService,
+      PrnfbNotification prnfbNotification,
+      Map<PrnfbVariable, Supplier<String>> variables,
+      SecurityService securityService) {
+    this(
+        pullRequest,
+        pullRequestAction,
+        applicationUser,
+        repositoryService,
+        propertiesService,
+        prnfbNotification,
+        variables,
+        new PrnfbVariableCache(),
+        securityService);
+  }
+
   PrnfbRenderer(
       PullRequest pullRequest,
       PrnfbPullRequestAction pullRequestAction,
@@ -58,6 +79,7 @@ public class PrnfbRenderer {
       ApplicationPropertiesService propertiesService,
       PrnfbNotification prnfbNotification,
       Map<PrnfbVariable, Supplier<String>> variables,
+      PrnfbVariableCache variableCache,
       SecurityService securityService) {
     this.pullRequest = pullRequest;
     this.pullRequestAction = pullRequestAction;
@@ -66,93 +88,84 @@ public class PrnfbRenderer {
     this.prnfbNotification = prnfbNotification;
     this.propertiesService = propertiesService;
     this.variables = variables;
+    this.variableCache = variableCache;
     this.securityService = securityService;
   }
 
-  private boolean containsVariable(String string, final String regExpStr) {
-    if (isNullOrEmpty(string)) {
-      return false;
-    }
-    return string.contains(regExpStr.replaceAll("\\\\", ""));
-  }
-
   @VisibleForTesting
-  String getRenderedStringResolved(
-      String string, ENCODE_FOR encodeFor, final String regExpStr, String resolved) {
-    String replaceWith = null;
+  static String encode(String resolved, ENCODE_FOR encodeFor) {
     if (encodeFor == URL) {
       try {
-        replaceWith = encode(resolved, UTF_8.name());
+        return URLEncoder.encode(resolved, UTF_8.name());
       } catch (final UnsupportedEncodingException e) {
-        propagate(e);
+        throw propagate(e);
       }
     } else if (encodeFor == HTML) {
-      replaceWith = StringEscapeUtils.escapeHtml4(resolved).replaceAll("(\r\n|\n)", "<br />");
+      return StringEscapeUtils.escapeHtml4(resolved).replaceAll("(\r\n|\n)", "<br />");
     } else if (encodeFor == JSON) {
-      replaceWith = jsonEscape(resolved);
-    } else {
-      replaceWith = resolved;
-    }
-    try {
-      replaceWith = Matcher.quoteReplacement(replaceWith);
-      string = string.replaceAll(regExpStr, replaceWith);
-    } catch (final IllegalArgumentException e) {
-      throw new RuntimeException("Tried to replace " + regExpStr + " with " + replaceWith, e);
+      return jsonEscape(resolved);
     }
-    return string;
-  }
-
-  @VisibleForTesting
-  String regexp(PrnfbVariable variable) {
-    return "\\$\\{" + variable.name() + "\\}";
+    return resolved;
   }
 
   public String render(
       String string,
-      ENCODE_FOR encodeFor,
-      ClientKeyStore clientKeyStore,
-      Boolean shouldAcceptAnyCertificate) {
-    string =
-        renderVariable(
-            string, ENCODE_FOR.NONE, clientKeyStore, shouldAcceptAnyCertificate, EVERYTHING_URL);
-
-    for (final PrnfbVariable variable : PrnfbVariable.values()) {
-      string =
-          renderVariable(string, encodeFor, clientKeyStore, shouldAcceptAnyCertificate, variable);
+      final ENCODE_FOR encodeFor,
+      final ClientKeyStore clientKeyStore,
+      final Boolean shouldAcceptAnyCertificate) {
+    if (isNullOrEmpty(string)) {
+      return string;
+    }
+    final PrnfbTemplate template = PrnfbTemplate.compile(string);
+    if (!template.hasVariables()) {
+      return string;
     }
-    return string;
+    return template.render(
+        new PrnfbTemplate.Resolver() {
+          @Override
+          public String resolve(PrnfbVariable variable) {
+            if (!PrnfbVariableCache.isCacheable(variable)) {
+              return encode(
+                  resolveVariable(clientKeyStore, shouldAcceptAnyCertificate, variable),
+                  encodeFor);
+            }
+            String value = variableCache.get(variable, encodeFor);
+            if (value == null) {
+              value =
+                  encode(
+                      resolveVariable(clientKeyStore, shouldAcceptAnyCertificate, variable),
+                      encodeFor);
+              variableCache.put(variable, encodeFor, value);
+            }
+            return value;
+          }
+        });
   }
 
-  private String renderVariable(
-      String string,
-      ENCODE_FOR encodeFor,
+  private String resolveVariable(
       ClientKeyStore clientKeyStore,
       Boolean shouldAcceptAnyCertificate,
       final PrnfbVariable variable) {
-    final String regExpStr = regexp(variable);
-    if (containsVariable(string, regExpStr)) {
-      String resolved = "";
-      try {
-        resolved =
-            variable.resolve(
-                pullRequest,
-                pullRequestAction,
-                applicationUser,
-                repositoryService,
-                propertiesService,
-                prnfbNotification,
-                variables,
-                clientKeyStore,
-                shouldAcceptAnyCertificate,
-                securityService);
-        if (resolved == null) {
-          resolved = "";
-        }
-      } catch (final Exception e) {
-        LOG.error("Error when resolving " + variable, e);
+    try {
+      final String resolved =
+          variable.resolve(
+              pullRequest,
+              pullRequestAction,
+              applicationUser,
+              repositoryService,
+              propertiesService,
+              prnfbNotification,
+              variables,
+              clientKeyStore,
+              shouldAcceptAnyCertificate,
+              securityService);
+      if (resolved == null) {
+        return "";
       }
-      return getRenderedStringResolved(string, encodeFor, regExpStr, resolved);
+      return resolved;
+    } catch (final Exception e) {
+      LOG.error("Error when resolving " + variable, e);
+      return "";
     }
-    return string;
   }
 }
@@ -66,6 +66,7 @@ public class PrnfbRendererFactory {
         this.propertiesService,
         prnfbNotification,
         variables.getVariables(),
+        variables.getVariableCache(),
         this.securityService);
   }
 }
@@ -0,0 +1,134 @@
+package se.bjurr.prnfb.service;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static se.bjurr.prnfb.service.PrnfbVariable.EVERYTHING_URL;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A string with <code>${VARIABLE}</code> placeholders, parsed into literal and {@link
+ * PrnfbVariable} tokens. Templates are compiled once per template text and cached, so rendering is
+ * a single pass over the tokens instead of one regexp replace per {@link PrnfbVariable}.
+ */
+public class PrnfbTemplate {
+
+  public interface Resolver {
+    /** Returns the value, already encoded, that should replace the given variable. */
+    String resolve(PrnfbVariable variable);
+  }
+
+  /**
+   * Templates come from notification and button settings, so there is normally a few of them per
+   * configured notification. The limit is only there to protect against unbounded growth.
+   */
+  private static final int MAX_CACHED_TEMPLATES = 10000;
+
+  private static final Map<String, PrnfbTemplate> cache = new ConcurrentHashMap<>();
+  private static final Map<String, PrnfbVariable> variablesByName = newHashMap();
+
+  static {
+    for (final PrnfbVariable variable : PrnfbVariable.values()) {
+      variablesByName.put(variable.name(), variable);
+    }
+  }
+
+  public static PrnfbTemplate compile(final String template) {
+    PrnfbTemplate compiled = cache.get(template);
+    if (compiled == null) {
+      if (cache.size() >= MAX_CACHED_TEMPLATES) {
+        cache.clear();
+      }
+      compiled = new PrnfbTemplate(expandEverythingUrl(template));
+      cache.put(template, compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * {@link PrnfbVariable#EVERYTHING_URL} expands to placeholders of all other variables, so it is
+   * expanded before the template is parsed.
+   */
+  @VisibleForTesting
+  static String expandEverythingUrl(final String template) {
+    final String placeholder = "${" + EVERYTHING_URL.name() + "}";
+    if (!template.contains(placeholder)) {
+      return template;
+    }
+    return template.replace(placeholder, PrnfbVariable.everythingUrl());
+  }
+
+  /** Has one more element than {@link #variables}, literals and variables alternate. */
+  private final String[] literals;
+
+  private final PrnfbVariable[] variables;
+
+  private final int templateLength;
+
+  private PrnfbTemplate(final String template) {
+    final List<String> literals = newArrayList();
+    final List<PrnfbVariable> variables = newArrayList();
+    final StringBuilder literal = new StringBuilder();
+    int i = 0;
+    while (i < template.length()) {
+      final int start = template.indexOf("${", i);
+      if (start == -1) {
+        break;
+      }
+      final int end = template.indexOf('}', start + 2);
+      if (end == -1) {
+        break;
+      }
+      final PrnfbVariable variable = variablesByName.get(template.substring(start + 2, end));
+      if (variable == null) {
+        literal.append(template, i, start + 1);
+        i = start + 1;
+        continue;
+      }
+      literal.append(template, i, start);
+      literals.add(literal.toString());
+      literal.setLength(0);
+      variables.add(variable);
+      i = end + 1;
+    }
+    literal.append(template, i, template.length());
+    literals.add(literal.toString());
+
+    this.literals = literals.toArray(new String[literals.size()]);
+    this.variables = variables.toArray(new PrnfbVariable[variables.size()]);
+    this.templateLength = template.length();
+  }
+
+  @VisibleForTesting
+  PrnfbVariable[] getVariables() {
+    return variables;
+  }
+
+  public boolean hasVariables() {
+    return variables.length > 0;
+  }
+
+  /** Resolves every distinct variable in the template once and renders it. */
+  public String render(final Resolver resolver) {
+    if (!hasVariables()) {
+      return literals[0];
+    }
+    final Map<PrnfbVariable, String> resolved = new EnumMap<>(PrnfbVariable.class);
+    final StringBuilder sb = new StringBuilder(templateLength);
+    for (int i = 0; i < variables.length; i++) {
+      sb.append(literals[i]);
+      String value = resolved.get(variables[i]);
+      if (value == null) {
+        value = resolver.resolve(variables[i]);
+        resolved.put(variables[i], value);
+      }
+      sb.append(value);
+    }
+    sb.append(literals[variables.length]);
+    return sb.toString();
+  }
+}
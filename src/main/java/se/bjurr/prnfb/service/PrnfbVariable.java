@@ -9,7 +9,6 @@ import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Ordering.usingToString;
 import static com.google.common.collect.Sets.newTreeSet;
-import static java.util.regex.Pattern.compile;
 import static se.bjurr.prnfb.http.UrlInvoker.HTTP_METHOD.GET;
 import static se.bjurr.prnfb.http.UrlInvoker.urlInvoker;
 import static se.bjurr.prnfb.service.RepoProtocol.http;
@@ -78,15 +77,7 @@ public enum PrnfbVariable {
             final ClientKeyStore clientKeyStore,
             final boolean shouldAcceptAnyCertificate,
             final SecurityService securityService) {
-          final List<String> parts = newArrayList();
-          for (final PrnfbVariable v : PrnfbVariable.values()) {
-            if (v != EVERYTHING_URL //
-                && v != PULL_REQUEST_DESCRIPTION) {
-              parts.add(v.name() + "=${" + v.name() + "}");
-            }
-          }
-          Collections.sort(parts);
-          return on('&').join(parts);
+          return everythingUrl();
         }
       }),
   VARIABLE_REGEX_MATCH(
@@ -124,9 +115,8 @@ public enum PrnfbVariable {
                       securityService);
             }
           }
-          if (prnfbNotification.getVariableRegex().isPresent()) {
-            final Matcher m =
-                compile(prnfbNotification.getVariableRegex().get()).matcher(variableValue);
+          if (prnfbNotification.getVariablePattern().isPresent()) {
+            final Matcher m = prnfbNotification.getVariablePattern().get().matcher(variableValue);
             if (!m.find()) {
               return "";
             }
@@ -187,9 +177,8 @@ public enum PrnfbVariable {
           createInvoker() //
               .invoke(urlInvoker);
           final String rawResponse = urlInvoker.getResponse().getContent().trim();
-          if (prnfbNotification.getInjectionUrlRegexp().isPresent()) {
-            final Matcher m =
-                compile(prnfbNotification.getInjectionUrlRegexp().get()).matcher(rawResponse);
+          if (prnfbNotification.getInjectionUrlPattern().isPresent()) {
+            final Matcher m = prnfbNotification.getInjectionUrlPattern().get().matcher(rawResponse);
             if (!m.find()) {
               return "";
             }
@@ -1476,6 +1465,18 @@ public enum PrnfbVariable {
     };
   }
 
+  static String everythingUrl() {
+    final List<String> parts = newArrayList();
+    for (final PrnfbVariable v : PrnfbVariable.values()) {
+      if (v != EVERYTHING_URL //
+          && v != PULL_REQUEST_DESCRIPTION) {
+        parts.add(v.name() + "=${" + v.name() + "}");
+      }
+    }
+    Collections.sort(parts);
+    return on('&').join(parts);
+  }
+
   private static String getOrEmpty(
       final Map<PrnfbVariable, Supplier<String>> variables, final PrnfbVariable variable) {
     if (variables.get(variable) == null) {
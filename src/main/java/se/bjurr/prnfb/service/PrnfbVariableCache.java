@@ -0,0 +1,51 @@
+package se.bjurr.prnfb.service;
+
+import static se.bjurr.prnfb.service.PrnfbVariable.INJECTION_URL_VALUE;
+import static se.bjurr.prnfb.service.PrnfbVariable.PULL_REQUEST_ACTION;
+import static se.bjurr.prnfb.service.PrnfbVariable.VARIABLE_REGEX_MATCH;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR;
+
+/**
+ * Resolved, and encoded, values of {@link PrnfbVariable}s for one pull request, user and event. A
+ * {@link VariablesContext} owns one of these so that every notification rendered for the same event
+ * shares the values instead of resolving them again.
+ */
+public class PrnfbVariableCache {
+
+  /**
+   * Variables that depend on the notification being rendered. {@link
+   * PrnfbVariable#PULL_REQUEST_ACTION} is one of them because a rescoped event may be RESCOPED_FROM
+   * for one notification and RESCOPED_TO for another.
+   */
+  private static final Set<PrnfbVariable> NOTIFICATION_SCOPED =
+      EnumSet.of(VARIABLE_REGEX_MATCH, INJECTION_URL_VALUE, PULL_REQUEST_ACTION);
+
+  private final Map<ENCODE_FOR, Map<PrnfbVariable, String>> resolved =
+      new EnumMap<>(ENCODE_FOR.class);
+
+  public static boolean isCacheable(PrnfbVariable variable) {
+    return !NOTIFICATION_SCOPED.contains(variable);
+  }
+
+  public synchronized String get(PrnfbVariable variable, ENCODE_FOR encodeFor) {
+    final Map<PrnfbVariable, String> forEncoding = resolved.get(encodeFor);
+    if (forEncoding == null) {
+      return null;
+    }
+    return forEncoding.get(variable);
+  }
+
+  public synchronized void put(PrnfbVariable variable, ENCODE_FOR encodeFor, String value) {
+    Map<PrnfbVariable, String> forEncoding = resolved.get(encodeFor);
+    if (forEncoding == null) {
+      forEncoding = new EnumMap<>(PrnfbVariable.class);
+      resolved.put(encodeFor, forEncoding);
+    }
+    forEncoding.put(variable, value);
+  }
+}
@@ -0,0 +1,154 @@
+package se.bjurr.prnfb.service;
+
+import static com.google.common.base.Optional.fromNullable;
+
+import com.google.common.base.Optional;
+import java.util.List;
+import java.util.UUID;
+import se.bjurr.prnfb.http.UrlInvoker.HTTP_METHOD;
+import se.bjurr.prnfb.settings.HasUuid;
+import se.bjurr.prnfb.settings.PrnfbHeader;
+
+/**
+ * A rendered notification that failed and is waiting to be sent again. Credentials are not stored
+ * here, they are taken from the notification when retrying.
+ */
+public class RetryEntry implements HasUuid {
+  private final int attempts;
+  private final List<PrnfbHeader> headers;
+  private final String lastError;
+  private final long lastAttempt;
+  private final HTTP_METHOD method;
+  private final long nextAttempt;
+  private final String notificationName;
+  private final UUID notificationUuid;
+  private final String postContent;
+  private final String url;
+  private final UUID uuid;
+
+  public RetryEntry(
+      UUID uuid,
+      UUID notificationUuid,
+      String notificationName,
+      String url,
+      HTTP_METHOD method,
+      String postContent,
+      List<PrnfbHeader> headers,
+      int attempts,
+      long lastAttempt,
+      long nextAttempt,
+      String lastError) {
+    this.uuid = uuid;
+    this.notificationUuid = notificationUuid;
+    this.notificationName = notificationName;
+    this.url = url;
+    this.method = method;
+    this.postContent = postContent;
+    this.headers = headers;
+    this.attempts = attempts;
+    this.lastAttempt = lastAttempt;
+    this.nextAttempt = nextAttempt;
+    this.lastError = lastError;
+  }
+
+  /** @return Number of times the notification has failed. */
+  public int getAttempts() {
+    return this.attempts;
+  }
+
+  public List<PrnfbHeader> getHeaders() {
+    return this.headers;
+  }
+
+  public long getLastAttempt() {
+    return this.lastAttempt;
+  }
+
+  public String getLastError() {
+    return this.lastError;
+  }
+
+  public HTTP_METHOD getMethod() {
+    return this.method;
+  }
+
+  public long getNextAttempt() {
+    return this.nextAttempt;
+  }
+
+  public String getNotificationName() {
+    return this.notificationName;
+  }
+
+  public UUID getNotificationUuid() {
+    return this.notificationUuid;
+  }
+
+  public Optional<String> getPostContent() {
+    return fromNullable(this.postContent);
+  }
+
+  public String getUrl() {
+    return this.url;
+  }
+
+  /** @return Same for all attempts of the notification. */
+  @Override
+  public UUID getUuid() {
+    return this.uuid;
+  }
+
+  public RetryEntry failedAgain(long lastAttempt, long nextAttempt, String lastError) {
+    return new RetryEntry(
+        this.uuid,
+        this.notificationUuid,
+        this.notificationName,
+        this.url,
+        this.method,
+        this.postContent,
+        this.headers,
+        this.attempts + 1,
+        lastAttempt,
+        nextAttempt,
+        lastError);
+  }
+
+  /** @return Same entry, to be sent later. It was never sent, so no attempt is counted. */
+  public RetryEntry postponed(long nextAttempt) {
+    return new RetryEntry(
+        this.uuid,
+        this.notificationUuid,
+        this.notificationName,
+        this.url,
+        this.method,
+        this.postContent,
+        this.headers,
+        this.attempts,
+        this.lastAttempt,
+        nextAttempt,
+        this.lastError);
+  }
+
+  @Override
+  public String toString() {
+    return "RetryEntry [uuid="
+        + this.uuid
+        + ", notificationUuid="
+        + this.notificationUuid
+        + ", notificationName="
+        + this.notificationName
+        + ", url="
+        + this.url
+        + ", method="
+        + this.method
+        + ", attempts="
+        + this.attempts
+        + ", lastAttempt="
+        + this.lastAttempt
+        + ", nextAttempt="
+        + this.nextAttempt
+        + ", lastError="
+        + this.lastError
+        + "]";
+  }
+}
@@ -0,0 +1,502 @@
+package se.bjurr.prnfb.service;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.ws.rs.core.HttpHeaders.AUTHORIZATION;
+import static org.slf4j.LoggerFactory.getLogger;
+import static se.bjurr.prnfb.http.ClientKeyStore.clientKeyStore;
+import static se.bjurr.prnfb.http.DeliveryScheduler.destinationOf;
+import static se.bjurr.prnfb.http.UrlInvoker.urlInvoker;
+import static se.bjurr.prnfb.service.PrnfbPlugin.isThisPlugin;
+
+import com.atlassian.beehive.ClusterLock;
+import com.atlassian.beehive.ClusterLockService;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.plugin.event.events.PluginDisablingEvent;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import se.bjurr.prnfb.http.ClientKeyStore;
+import se.bjurr.prnfb.http.DeliveryScheduler;
+import se.bjurr.prnfb.http.HttpResponse;
+import se.bjurr.prnfb.http.Invoker;
+import se.bjurr.prnfb.http.UrlInvoker;
+import se.bjurr.prnfb.settings.PrnfbHeader;
+import se.bjurr.prnfb.settings.PrnfbNotification;
+import se.bjurr.prnfb.settings.PrnfbSettingsData;
+
+/**
+ * Keeps failed notifications in plugin settings and sends them again, with exponential backoff,
+ * until they succeed or the max attempts of the notification is reached. Notifications that still
+ * fail are moved to a dead letter list.<br>
+ * <br>
+ * Due retries are collected every {@link #POLL_SECONDS} seconds, off the event thread, and sent
+ * through the {@link DeliveryScheduler}. Pending retries and dead letters are only changed holding
+ * a cluster lock, so that a retry is sent by one node only and no node overwrites the changes of
+ * another. The backoff is randomized so that notifications that
+ * failed together are not retried together.
+ */
+public class RetryService {
+  private static final String STORAGE_KEY_PREFIX = "se.bjurr.prnfb.4.";
+  /** UUID:s of all pending retries. Each retry is stored in its own key. */
+  public static final String RETRIES_STORAGE_KEY = STORAGE_KEY_PREFIX + "retries";
+  public static final String DEAD_LETTER_STORAGE_KEY = STORAGE_KEY_PREFIX + "dead-letters";
+
+  public static final int DEFAULT_BACKOFF_SECONDS = 30;
+  @VisibleForTesting static final long MAX_BACKOFF_MILLIS = HOURS.toMillis(1);
+  @VisibleForTesting static final int MAX_DEAD_LETTERS = 100;
+  @VisibleForTesting static final int MAX_PENDING = 1000;
+  private static final long POLL_SECONDS = 10;
+  private static final String RETRY_LOCK_NAME = STORAGE_KEY_PREFIX + "retry-lock";
+
+  private static final Logger LOG = getLogger(RetryService.class);
+  private static final Gson gson = new Gson();
+  private static final Type entriesType = new TypeToken<List<RetryEntry>>() {}.getType();
+  private static final Type uuidListType = new TypeToken<List<UUID>>() {}.getType();
+  private static Invoker mockedInvoker = null;
+
+  @VisibleForTesting
+  static String retryStorageKey(final UUID uuid) {
+    return STORAGE_KEY_PREFIX + "retry." + uuid;
+  }
+
+  @VisibleForTesting
+  public static void setInvoker(final Invoker invoker) {
+    RetryService.mockedInvoker = invoker;
+  }
+
+  /**
+   * @return Random delay between half and all of the backoff for the given attempt, the backoff is
+   *     doubled for every attempt.
+   */
+  @VisibleForTesting
+  static long backoffMillis(final int backoffSeconds, final int attempts, final Random random) {
+    long backoff = SECONDS.toMillis(backoffSeconds);
+    for (int i = 1; i < attempts && backoff < MAX_BACKOFF_MILLIS; i++) {
+      backoff *= 2;
+    }
+    backoff = Math.min(backoff, MAX_BACKOFF_MILLIS);
+    return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+  }
+
+  /** @return True if the {@link DeliveryScheduler} did not send it, because of overflow. */
+  private static boolean isNotSent(final Throwable e) {
+    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+    return cause instanceof RejectedExecutionException || cause instanceof CancellationException;
+  }
+
+  /** Queue overflow in the {@link DeliveryScheduler} is not retried, that is backpressure. */
+  private static boolean isFailure(final HttpResponse httpResponse, final Throwable e) {
+    if (isNotSent(e)) {
+      return false;
+    }
+    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+    return cause != null
+        || httpResponse == null
+        || httpResponse.getStatus() < 200
+        || httpResponse.getStatus() > 299;
+  }
+
+  private static String describe(final HttpResponse httpResponse, final Throwable e) {
+    if (e != null) {
+      final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+      return cause.toString();
+    }
+    if (httpResponse == null) {
+      return "No response";
+    }
+    return "HTTP " + httpResponse.getStatus();
+  }
+
+  private final ClusterLockService clusterLockService;
+  private final DeliveryScheduler deliveryScheduler;
+  private final PluginSettings pluginSettings;
+  private final ScheduledExecutorService poller;
+  private final Random random = new Random();
+  private final SettingsService settingsService;
+  private final TransactionTemplate transactionTemplate;
+
+  public RetryService(
+      final PluginSettingsFactory pluginSettingsFactory,
+      final TransactionTemplate transactionTemplate,
+      final ClusterLockService clusterLockService,
+      final SettingsService settingsService,
+      final DeliveryScheduler deliveryScheduler) {
+    this(
+        pluginSettingsFactory,
+        transactionTemplate,
+        clusterLockService,
+        settingsService,
+        deliveryScheduler,
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "prnfb-retry");
+                thread.setDaemon(true);
+                return thread;
+              }
+            }));
+    this.poller.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              retryDue(System.currentTimeMillis());
+            } catch (final Exception e) {
+              LOG.error("Unable to retry notifications", e);
+            }
+          }
+        },
+        POLL_SECONDS,
+        POLL_SECONDS,
+        SECONDS);
+  }
+
+  private RetryService(
+      final PluginSettingsFactory pluginSettingsFactory,
+      final TransactionTemplate transactionTemplate,
+      final ClusterLockService clusterLockService,
+      final SettingsService settingsService,
+      final DeliveryScheduler deliveryScheduler,
+      final ScheduledExecutorService poller) {
+    this.pluginSettings = pluginSettingsFactory.createGlobalSettings();
+    this.transactionTemplate = transactionTemplate;
+    this.clusterLockService = clusterLockService;
+    this.settingsService = settingsService;
+    this.deliveryScheduler = deliveryScheduler;
+    this.poller = poller;
+  }
+
+  /** Not a constructor, and does not poll, so that tests decide when retries are due. */
+  @VisibleForTesting
+  public static RetryService retryService(
+      final PluginSettingsFactory pluginSettingsFactory,
+      final TransactionTemplate transactionTemplate,
+      final ClusterLockService clusterLockService,
+      final SettingsService settingsService,
+      final DeliveryScheduler deliveryScheduler) {
+    return new RetryService(
+        pluginSettingsFactory,
+        transactionTemplate,
+        clusterLockService,
+        settingsService,
+        deliveryScheduler,
+        null);
+  }
+
+  /**
+   * Queues the notification for retry if the invocation failed and the notification allows
+   * retries.
+   */
+  public void retryIfFailed(
+      final PrnfbNotification notification,
+      final UrlInvoker urlInvoker,
+      final HttpResponse httpResponse,
+      final Throwable e) {
+    if (!isFailure(httpResponse, e) || maxAttempts(notification) <= 0) {
+      return;
+    }
+    final List<PrnfbHeader> headers = newArrayList();
+    for (final PrnfbHeader header : urlInvoker.getHeaders()) {
+      if (!header.getName().equals(AUTHORIZATION)) {
+        headers.add(header);
+      }
+    }
+    final long now = System.currentTimeMillis();
+    final RetryEntry entry =
+        new RetryEntry(
+            UUID.randomUUID(),
+            notification.getUuid(),
+            notification.getName(),
+            urlInvoker.getUrlParam(),
+            urlInvoker.getMethod(),
+            urlInvoker.getPostContent().orNull(),
+            headers,
+            1,
+            now,
+            now + backoffMillis(backoffSeconds(notification), 1, this.random),
+            describe(httpResponse, e));
+    LOG.info("Will retry " + notification.getName() + ", " + entry.getLastError());
+    inLockedTransaction(
+        new TransactionCallback<Void>() {
+          @Override
+          public Void doInTransaction() {
+            final List<UUID> index = readIndex();
+            if (index.size() >= MAX_PENDING) {
+              addDeadLetter(entry);
+            } else {
+              addPending(index, entry);
+            }
+            return null;
+          }
+        });
+  }
+
+  public List<RetryEntry> getPending() {
+    final List<RetryEntry> pending = newArrayList();
+    for (final UUID uuid : readIndex()) {
+      final RetryEntry entry = readEntry(uuid);
+      if (entry != null) {
+        pending.add(entry);
+      }
+    }
+    return pending;
+  }
+
+  public List<RetryEntry> getDeadLetters() {
+    return read(DEAD_LETTER_STORAGE_KEY);
+  }
+
+  public void clearDeadLetters() {
+    inLockedTransaction(
+        new TransactionCallback<Void>() {
+          @Override
+          public Void doInTransaction() {
+            pluginSettings.remove(DEAD_LETTER_STORAGE_KEY);
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Takes all retries that are due and sends them. Does nothing if another node holds the lock, it
+   * will be tried again on next poll.
+   */
+  @VisibleForTesting
+  void retryDue(final long now) {
+    final ClusterLock lock = this.clusterLockService.getLockForName(RETRY_LOCK_NAME);
+    if (!lock.tryLock()) {
+      return;
+    }
+    final List<RetryEntry> due;
+    try {
+      due =
+          inSynchronizedTransaction(
+              new TransactionCallback<List<RetryEntry>>() {
+                @Override
+                public List<RetryEntry> doInTransaction() {
+                  return takeDue(now);
+                }
+              });
+    } finally {
+      lock.unlock();
+    }
+    if (due.isEmpty()) {
+      return;
+    }
+    final PrnfbSettingsData settings = this.settingsService.getPrnfbSettingsData();
+    final ClientKeyStore clientKeyStore = clientKeyStore(settings);
+    for (final RetryEntry entry : due) {
+      final Optional<PrnfbNotification> notification =
+          this.settingsService.findNotification(entry.getNotificationUuid());
+      if (!notification.isPresent()) {
+        LOG.info("Not retrying " + entry.getNotificationName() + ", it has been deleted");
+        continue;
+      }
+      retry(entry, notification.get(), settings, clientKeyStore);
+    }
+  }
+
+  private List<RetryEntry> takeDue(final long now) {
+    final List<UUID> index = readIndex();
+    final List<UUID> keep = newArrayList();
+    final List<RetryEntry> taken = newArrayList();
+    for (final UUID uuid : index) {
+      final RetryEntry entry = readEntry(uuid);
+      if (entry == null) {
+        continue;
+      }
+      if (entry.getNextAttempt() <= now) {
+        taken.add(entry);
+        this.pluginSettings.remove(retryStorageKey(uuid));
+      } else {
+        keep.add(uuid);
+      }
+    }
+    if (keep.size() != index.size()) {
+      writeIndex(keep);
+    }
+    return taken;
+  }
+
+  private void retry(
+      final RetryEntry entry,
+      final PrnfbNotification notification,
+      final PrnfbSettingsData settings,
+      final ClientKeyStore clientKeyStore) {
+    final UrlInvoker urlInvoker =
+        urlInvoker() //
+            .withClientKeyStore(clientKeyStore) //
+            .withUrlParam(entry.getUrl()) //
+            .withMethod(entry.getMethod()) //
+            .withPostContent(entry.getPostContent()) //
+            .appendBasicAuth(notification);
+    for (final PrnfbHeader header : entry.getHeaders()) {
+      urlInvoker.withHeader(header.getName(), header.getValue());
+    }
+    urlInvoker //
+        .withProxy(notification) //
+        .shouldAcceptAnyCertificate(settings.isShouldAcceptAnyCertificate()) //
+        .setHttpVersion(notification.getHttpVersion());
+
+    this.deliveryScheduler
+        .submit(
+            destinationOf(entry.getUrl()),
+            null,
+            () -> mockedInvoker != null ? mockedInvoker.invoke(urlInvoker) : urlInvoker.invoke())
+        .whenComplete(
+            (httpResponse, e) -> {
+              if (isNotSent(e)) {
+                // Already taken from storage, so it has to be put back
+                final long now = System.currentTimeMillis();
+                final RetryEntry postponed =
+                    entry.postponed(
+                        now
+                            + backoffMillis(
+                                backoffSeconds(notification), entry.getAttempts(), this.random));
+                requeue(postponed, maxAttempts(notification));
+                return;
+              }
+              if (!isFailure(httpResponse, e)) {
+                return;
+              }
+              final long now = System.currentTimeMillis();
+              final RetryEntry failed =
+                  entry.failedAgain(
+                      now,
+                      now
+                          + backoffMillis(
+                              backoffSeconds(notification), entry.getAttempts() + 1, this.random),
+                      describe(httpResponse, e));
+              requeue(failed, maxAttempts(notification));
+            });
+  }
+
+  private void requeue(final RetryEntry failed, final int maxAttempts) {
+    inLockedTransaction(
+        new TransactionCallback<Void>() {
+          @Override
+          public Void doInTransaction() {
+            if (failed.getAttempts() > maxAttempts) {
+              LOG.warn(
+                  "Giving up on "
+                      + failed.getNotificationName()
+                      + " after "
+                      + failed.getAttempts()
+                      + " attempts, "
+                      + failed.getLastError());
+              addDeadLetter(failed);
+              return null;
+            }
+            addPending(readIndex(), failed);
+            return null;
+          }
+        });
+  }
+
+  private void addPending(final List<UUID> index, final RetryEntry entry) {
+    this.pluginSettings.put(retryStorageKey(entry.getUuid()), gson.toJson(entry));
+    index.add(entry.getUuid());
+    writeIndex(index);
+  }
+
+  private void addDeadLetter(final RetryEntry entry) {
+    final List<RetryEntry> deadLetters = read(DEAD_LETTER_STORAGE_KEY);
+    deadLetters.add(entry);
+    while (deadLetters.size() > MAX_DEAD_LETTERS) {
+      deadLetters.remove(0);
+    }
+    write(DEAD_LETTER_STORAGE_KEY, deadLetters);
+  }
+
+  private int maxAttempts(final PrnfbNotification notification) {
+    final Integer maxAttempts = notification.getRetryMaxAttempts();
+    return maxAttempts == null ? 0 : maxAttempts;
+  }
+
+  private int backoffSeconds(final PrnfbNotification notification) {
+    final Integer backoffSeconds = notification.getRetryBackoffSeconds();
+    return backoffSeconds == null || backoffSeconds <= 0
+        ? DEFAULT_BACKOFF_SECONDS
+        : backoffSeconds;
+  }
+
+  private List<RetryEntry> read(final String key) {
+    final String json = (String) this.pluginSettings.get(key);
+    if (json == null) {
+      return newArrayList();
+    }
+    final List<RetryEntry> entries = gson.fromJson(json, entriesType);
+    return entries == null ? newArrayList() : newArrayList(entries);
+  }
+
+  private RetryEntry readEntry(final UUID uuid) {
+    final String json = (String) this.pluginSettings.get(retryStorageKey(uuid));
+    return json == null ? null : gson.fromJson(json, RetryEntry.class);
+  }
+
+  private List<UUID> readIndex() {
+    final String json = (String) this.pluginSettings.get(RETRIES_STORAGE_KEY);
+    if (json == null) {
+      return newArrayList();
+    }
+    return gson.fromJson(json, uuidListType);
+  }
+
+  private void writeIndex(final List<UUID> uuids) {
+    if (uuids.isEmpty()) {
+      this.pluginSettings.remove(RETRIES_STORAGE_KEY);
+    } else {
+      this.pluginSettings.put(RETRIES_STORAGE_KEY, gson.toJson(uuids, uuidListType));
+    }
+  }
+
+  private void write(final String key, final List<RetryEntry> entries) {
+    if (entries.isEmpty()) {
+      this.pluginSettings.remove(key);
+    } else {
+      this.pluginSettings.put(key, gson.toJson(entries, entriesType));
+    }
+  }
+
+  /** Waits for other nodes to finish their changes. */
+  private <T> T inLockedTransaction(final TransactionCallback<T> transactionCallback) {
+    final ClusterLock lock = this.clusterLockService.getLockForName(RETRY_LOCK_NAME);
+    lock.lock();
+    try {
+      return inSynchronizedTransaction(transactionCallback);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private synchronized <T> T inSynchronizedTransaction(
+      final TransactionCallback<T> transactionCallback) {
+    return this.transactionTemplate.execute(transactionCallback);
+  }
+
+  @EventListener
+  public void onPluginDisabling(final PluginDisablingEvent event) {
+    if (isThisPlugin(event) && this.poller != null) {
+      this.poller.shutdownNow();
+    }
+  }
+}
@@ -2,12 +2,13 @@ package se.bjurr.prnfb.service;
 
 import static com.atlassian.bitbucket.permission.Permission.ADMIN;
 import static com.google.common.base.Joiner.on;
+import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Predicates.not;
 import static com.google.common.base.Throwables.propagate;
 import static com.google.common.collect.Iterables.filter;
-import static com.google.common.collect.Iterables.find;
-import static com.google.common.collect.Iterables.tryFind;
 import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static se.bjurr.prnfb.service.PrnfbPlugin.isThisPlugin;
 import static se.bjurr.prnfb.settings.PrnfbNotificationBuilder.prnfbNotificationBuilder;
 import static se.bjurr.prnfb.settings.PrnfbSettings.UNCHANGED;
 import static se.bjurr.prnfb.settings.PrnfbSettingsBuilder.prnfbSettingsBuilder;
@@ -17,6 +18,8 @@ import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.user.SecurityService;
 import com.atlassian.bitbucket.util.Operation;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.plugin.event.events.PluginDisablingEvent;
 import com.atlassian.sal.api.pluginsettings.PluginSettings;
 import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
 import com.atlassian.sal.api.transaction.TransactionCallback;
@@ -24,12 +27,23 @@ import com.atlassian.sal.api.transaction.TransactionTemplate;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.bjurr.prnfb.http.HttpUtil;
+import se.bjurr.prnfb.listener.PrnfbPullRequestAction;
 import se.bjurr.prnfb.settings.HasUuid;
 import se.bjurr.prnfb.settings.PrnfbButton;
 import se.bjurr.prnfb.settings.PrnfbNotification;
@@ -40,28 +54,113 @@ import se.bjurr.prnfb.settings.ValidationException;
 
 public class SettingsService {
 
+  /**
+   * All settings used to be stored as one document here. It is migrated when found, and kept so
+   * that an older version of the plugin still finds its settings.
+   */
   public static final String SETTINGS_STORAGE_KEY =
       "se.bjurr.prnfb.pull-request-notifier-for-bitbucket-3";
+
+  private static final String STORAGE_KEY_PREFIX = "se.bjurr.prnfb.4.";
+  public static final String SETTINGS_DATA_STORAGE_KEY = STORAGE_KEY_PREFIX + "settings";
+  /** UUID:s of all notifications, in order. Each notification is stored in its own key. */
+  public static final String NOTIFICATIONS_STORAGE_KEY = STORAGE_KEY_PREFIX + "notifications";
+  /** UUID:s of all buttons, in order. Each button is stored in its own key. */
+  public static final String BUTTONS_STORAGE_KEY = STORAGE_KEY_PREFIX + "buttons";
+  /**
+   * Changed whenever anything is stored, so that a node only has to read this to know if its cached
+   * settings are still current.
+   */
+  public static final String SETTINGS_VERSION_STORAGE_KEY = STORAGE_KEY_PREFIX + "version";
+  /** How stale a node may let its cached settings get before checking the version again. */
+  private static final long VERSION_CHECK_MILLIS = 1000L;
+
+  private static final Type uuidListType = new TypeToken<List<UUID>>() {}.getType();
   private static Gson gson = new Gson();
+
+  @VisibleForTesting
+  static String notificationStorageKey(UUID uuid) {
+    return STORAGE_KEY_PREFIX + "notification." + uuid;
+  }
+
+  @VisibleForTesting
+  static String buttonStorageKey(UUID uuid) {
+    return STORAGE_KEY_PREFIX + "button." + uuid;
+  }
+
+  /** Without the background refresh, {@link #refresh()} is invoked by the test instead. */
+  @VisibleForTesting
+  static SettingsService settingsService(
+      PluginSettingsFactory pluginSettingsFactory,
+      TransactionTemplate transactionTemplate,
+      SecurityService securityService) {
+    return new SettingsService(pluginSettingsFactory, transactionTemplate, securityService, null);
+  }
+
   private final Logger logger = LoggerFactory.getLogger(SettingsService.class);
   private final PluginSettings pluginSettings;
+  private final ScheduledExecutorService refresher;
   private final SecurityService securityService;
   private final TransactionTemplate transactionTemplate;
 
+  /** Taken by writers and by the refresh, never by readers. */
   private static final Object lock = new Object();
-  static volatile PrnfbSettings cachedSettings = null;
+  /**
+   * Immutable snapshot of the settings. Replaced, never changed, so readers can use it without
+   * locking.
+   */
+  static final AtomicReference<PrnfbSettings> cachedSettings = new AtomicReference<>();
 
   static volatile PrnfbSettingsData lastSeenGlobalSettings = null;
 
-  static volatile long nextCacheExpiry = 0;
+  static volatile String cachedVersion = null;
 
   public SettingsService(
       PluginSettingsFactory pluginSettingsFactory,
       TransactionTemplate transactionTemplate,
       SecurityService securityService) {
+    this(
+        pluginSettingsFactory,
+        transactionTemplate,
+        securityService,
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "prnfb-settings");
+                thread.setDaemon(true);
+                return thread;
+              }
+            }));
+    this.refresher.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            // The first load is left to a reader, it may have to migrate legacy settings
+            if (cachedSettings.get() == null) {
+              return;
+            }
+            try {
+              refresh();
+            } catch (final Exception e) {
+              logger.error("Unable to refresh settings", e);
+            }
+          }
+        },
+        0,
+        VERSION_CHECK_MILLIS,
+        MILLISECONDS);
+  }
+
+  private SettingsService(
+      PluginSettingsFactory pluginSettingsFactory,
+      TransactionTemplate transactionTemplate,
+      SecurityService securityService,
+      ScheduledExecutorService refresher) {
     this.pluginSettings = pluginSettingsFactory.createGlobalSettings();
     this.transactionTemplate = transactionTemplate;
     this.securityService = securityService;
+    this.refresher = refresher;
   }
 
   public PrnfbButton addOrUpdateButton(PrnfbButton prnfbButton) {
@@ -113,11 +212,11 @@ public class SettingsService {
   }
 
   public Optional<PrnfbButton> findButton(UUID uuid) {
-    return tryFind(getPrnfbSettings().getButtons(), withUuid(uuid));
+    return getPrnfbSettings().getButtonsIndex().find(uuid);
   }
 
   public Optional<PrnfbNotification> findNotification(UUID notificationUuid) {
-    return tryFind(getPrnfbSettings().getNotifications(), withUuid(notificationUuid));
+    return getPrnfbSettings().getNotificationsIndex().find(notificationUuid);
   }
 
   public PrnfbButton getButton(UUID buttionUuid) {
@@ -133,35 +232,21 @@ public class SettingsService {
   }
 
   public List<PrnfbButton> getButtons(Project p) {
-    String projectKey = p.getKey();
-    final List<PrnfbButton> found = newArrayList();
-    for (final PrnfbButton candidate : getPrnfbSettings().getButtons()) {
-      if (candidate.getProjectKey().isPresent()
-          && candidate.getProjectKey().get().equals(projectKey)) {
-        found.add(candidate);
-      }
-    }
-    return found;
+    return getPrnfbSettings().getButtonsIndex().findByProject(p.getKey());
   }
 
   public List<PrnfbButton> getButtons(Repository r) {
-    String projectKey = r.getProject().getKey();
-    String repositorySlug = r.getSlug();
-
-    final List<PrnfbButton> found = newArrayList();
-    for (final PrnfbButton candidate : getPrnfbSettings().getButtons()) {
-      if (candidate.getProjectKey().isPresent()
-          && candidate.getProjectKey().get().equals(projectKey) //
-          && candidate.getRepositorySlug().isPresent()
-          && candidate.getRepositorySlug().get().equals(repositorySlug)) {
-        found.add(candidate);
-      }
-    }
-    return found;
+    return getPrnfbSettings()
+        .getButtonsIndex()
+        .findByRepository(r.getProject().getKey(), r.getSlug());
   }
 
   public PrnfbNotification getNotification(UUID notificationUuid) {
-    return find(getPrnfbSettings().getNotifications(), withUuid(notificationUuid));
+    final Optional<PrnfbNotification> found = findNotification(notificationUuid);
+    if (!found.isPresent()) {
+      throw new NoSuchElementException(notificationUuid + " not found");
+    }
+    return found.get();
   }
 
   public List<PrnfbNotification> getNotifications() {
@@ -169,27 +254,23 @@ public class SettingsService {
   }
 
   public List<PrnfbNotification> getNotifications(String projectKey) {
-    final List<PrnfbNotification> found = newArrayList();
-    for (final PrnfbNotification candidate : getPrnfbSettings().getNotifications()) {
-      if (candidate.getProjectKey().isPresent()
-          && candidate.getProjectKey().get().equals(projectKey)) {
-        found.add(candidate);
-      }
-    }
-    return found;
+    return getPrnfbSettings().getNotificationsIndex().findByProject(projectKey);
   }
 
   public List<PrnfbNotification> getNotifications(String projectKey, String repositorySlug) {
-    final List<PrnfbNotification> found = newArrayList();
-    for (final PrnfbNotification candidate : getPrnfbSettings().getNotifications()) {
-      if (candidate.getProjectKey().isPresent()
-          && candidate.getProjectKey().get().equals(projectKey) //
-          && candidate.getRepositorySlug().isPresent()
-          && candidate.getRepositorySlug().get().equals(repositorySlug)) {
-        found.add(candidate);
-      }
-    }
-    return found;
+    return getPrnfbSettings().getNotificationsIndex().findByRepository(projectKey, repositorySlug);
+  }
+
+  /**
+   * @return Notifications that may be triggered by any of the given actions on a pull request
+   *     targeting the given repository. Uses the index of the current settings, so only the
+   *     candidates are visited.
+   */
+  public List<PrnfbNotification> getNotificationCandidates(
+      Set<PrnfbPullRequestAction> actions, String projectKey, String repositorySlug) {
+    return getPrnfbSettings() //
+        .getNotificationIndex() //
+        .find(actions, projectKey, repositorySlug);
   }
 
   @VisibleForTesting
@@ -197,6 +278,12 @@ public class SettingsService {
     return doGetPrnfbSettings(false);
   }
 
+  /** @return Changed whenever the settings are changed on any node, null if never changed. */
+  public String getSettingsVersion() {
+    getPrnfbSettings();
+    return cachedVersion;
+  }
+
   public PrnfbSettingsData getPrnfbSettingsData() {
     return getPrnfbSettings().getPrnfbSettingsData();
   }
@@ -206,29 +293,30 @@ public class SettingsService {
         new TransactionCallback<Void>() {
           @Override
           public Void doInTransaction() {
-            final PrnfbSettings oldSettings = doGetPrnfbSettings(true);
-            final PrnfbSettings newPrnfbSettings =
-                prnfbSettingsBuilder(oldSettings) //
-                    .setPrnfbSettingsData(prnfbSettingsData) //
-                    .build();
-            doSetPrnfbSettings(newPrnfbSettings);
+            doSetPrnfbSettingsData(prnfbSettingsData);
             return null;
           }
         });
   }
 
   private PrnfbButton doAddOrUpdateButton(PrnfbButton prnfbButton) {
-    if (findButton(prnfbButton.getUuid()).isPresent()) {
-      doDeleteButton(prnfbButton.getUuid());
+    synchronized (lock) {
+      final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
+      final PrnfbButton stored =
+          storeEntity(
+              BUTTONS_STORAGE_KEY,
+              buttonStorageKey(prnfbButton.getUuid()),
+              prnfbButton,
+              PrnfbButton.class);
+      final List<PrnfbButton> buttons =
+          withoutUuid(originalSettings.getButtons(), prnfbButton.getUuid());
+      buttons.add(stored);
+      cache(
+          prnfbSettingsBuilder(originalSettings) //
+              .setButtons(buttons) //
+              .build());
+      changeVersion();
     }
-
-    final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
-    final PrnfbSettings updated =
-        prnfbSettingsBuilder(originalSettings) //
-            .withButton(prnfbButton) //
-            .build();
-
-    doSetPrnfbSettings(updated);
     return prnfbButton;
   }
 
@@ -261,17 +349,23 @@ public class SettingsService {
             .withProxyPassword(proxyPassword) //
             .build();
 
-    if (oldNotification.isPresent()) {
-      doDeleteNotification(notificationUuid);
+    synchronized (lock) {
+      final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
+      final PrnfbNotification stored =
+          storeEntity(
+              NOTIFICATIONS_STORAGE_KEY,
+              notificationStorageKey(notificationUuid),
+              newNotification,
+              PrnfbNotification.class);
+      final List<PrnfbNotification> notifications =
+          withoutUuid(originalSettings.getNotifications(), notificationUuid);
+      notifications.add(stored);
+      cache(
+          prnfbSettingsBuilder(originalSettings) //
+              .setNotifications(notifications) //
+              .build());
+      changeVersion();
     }
-
-    final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
-    final PrnfbSettings updated =
-        prnfbSettingsBuilder(originalSettings) //
-            .withNotification(newNotification) //
-            .build();
-
-    doSetPrnfbSettings(updated);
     return newNotification;
   }
 
@@ -284,91 +378,247 @@ public class SettingsService {
   }
 
   private void doDeleteButton(UUID uuid) {
-    final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
-    final List<PrnfbButton> keep =
-        newArrayList(filter(originalSettings.getButtons(), not(withUuid(uuid))));
-    final PrnfbSettings withoutDeleted =
-        prnfbSettingsBuilder(originalSettings) //
-            .setButtons(keep) //
-            .build();
-    doSetPrnfbSettings(withoutDeleted);
+    synchronized (lock) {
+      final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
+      removeEntity(BUTTONS_STORAGE_KEY, buttonStorageKey(uuid), uuid);
+      cache(
+          prnfbSettingsBuilder(originalSettings) //
+              .setButtons(withoutUuid(originalSettings.getButtons(), uuid)) //
+              .build());
+      changeVersion();
+    }
   }
 
   private void doDeleteNotification(UUID uuid) {
-    final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
-    final List<PrnfbNotification> keep =
-        newArrayList(filter(originalSettings.getNotifications(), not(withUuid(uuid))));
-    final PrnfbSettings withoutDeleted =
-        prnfbSettingsBuilder(originalSettings) //
-            .setNotifications(keep) //
-            .build();
-    doSetPrnfbSettings(withoutDeleted);
+    synchronized (lock) {
+      final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
+      removeEntity(NOTIFICATIONS_STORAGE_KEY, notificationStorageKey(uuid), uuid);
+      cache(
+          prnfbSettingsBuilder(originalSettings) //
+              .setNotifications(withoutUuid(originalSettings.getNotifications(), uuid)) //
+              .build());
+      changeVersion();
+    }
+  }
+
+  /**
+   * Readers get the current snapshot, it is kept current by the background {@link #refresh()}.
+   * Only the very first read has to wait for the settings to be loaded.
+   *
+   * @param checkVersion Check that the snapshot is current. Done before changing settings, to not
+   *     overwrite changes from other nodes.
+   */
+  private PrnfbSettings doGetPrnfbSettings(boolean checkVersion) {
+    final PrnfbSettings settings = cachedSettings.get();
+    if (settings != null && !checkVersion) {
+      return settings;
+    }
+    if (settings == null && needsMigration()) {
+      migrate();
+    }
+    refresh();
+    return cachedSettings.get();
   }
 
-  private PrnfbSettings doGetPrnfbSettings(boolean forceRead) {
-    long now = System.currentTimeMillis();
-    if (now >= nextCacheExpiry || forceRead) {
-      synchronized (lock) {
-        if (now >= nextCacheExpiry || forceRead) {
+  /** Reads and parses the settings, if some node has changed them since they were cached. */
+  @VisibleForTesting
+  void refresh() {
+    synchronized (lock) {
+      final String version = (String) this.pluginSettings.get(SETTINGS_VERSION_STORAGE_KEY);
+      if (cachedSettings.get() == null || !Objects.equals(version, cachedVersion)) {
+        cache(readPrnfbSettings());
+        cachedVersion = version;
+      }
+    }
+  }
 
-          // Cache expired... re-read value from database and re-cache it
-          String s = (String) this.pluginSettings.get(SETTINGS_STORAGE_KEY);
+  @EventListener
+  public void onPluginDisabling(final PluginDisablingEvent event) {
+    if (isThisPlugin(event) && this.refresher != null) {
+      this.refresher.shutdownNow();
+    }
+  }
 
-          if (s != null) {
-            // Successfully retrieved a real value... use it as our cache for next 33 seconds!
-            nextCacheExpiry = System.currentTimeMillis() + 33333L;
-            cachedSettings = gson.fromJson(s, PrnfbSettings.class);
+  /** Must be done after every change, while holding the lock. */
+  private void changeVersion() {
+    final String version = UUID.randomUUID().toString();
+    this.pluginSettings.put(SETTINGS_VERSION_STORAGE_KEY, version);
+    cachedVersion = version;
+  }
 
-            // If the keystore or "accept-all-certificates" value changed, we need
-            // to reset HttpUtil's connection-managers.
-            PrnfbSettingsData latestData = cachedSettings.getPrnfbSettingsData();
-            if (latestData != null && !latestData.equals(lastSeenGlobalSettings)) {
-              HttpUtil.reset();
-              lastSeenGlobalSettings = latestData;
-            }
+  private void cache(PrnfbSettings settings) {
+    cachedSettings.set(
+        prnfbSettingsBuilder(settings) //
+            .setNotifications(ImmutableList.copyOf(settings.getNotifications())) //
+            .setButtons(ImmutableList.copyOf(settings.getButtons())) //
+            .build());
+
+    // If the keystore or "accept-all-certificates" value changed, we need
+    // to reset HttpUtil's connection-managers.
+    PrnfbSettingsData latestData = settings.getPrnfbSettingsData();
+    if (!latestData.equals(lastSeenGlobalSettings)) {
+      HttpUtil.reset();
+      HttpUtil.setHistorySize(latestData.getDeliveryHistorySize());
+      HttpUtil.setConnectionLimits(
+          latestData.getDeliveryConnectionsPerHost(), latestData.getDeliveryConnectionsTotal());
+      lastSeenGlobalSettings = latestData;
+    }
+  }
 
-          } else {
-            cachedSettings = null;
-          }
-        }
+  private PrnfbSettingsData defaultSettingsData() {
+    return prnfbSettingsDataBuilder() //
+        .setAdminRestriction(USER_LEVEL.ADMIN) //
+        .build();
+  }
+
+  private PrnfbSettings readPrnfbSettings() {
+    PrnfbSettingsData prnfbSettingsData;
+    final String data = (String) this.pluginSettings.get(SETTINGS_DATA_STORAGE_KEY);
+    if (data != null) {
+      prnfbSettingsData = gson.fromJson(data, PrnfbSettingsData.class);
+    } else {
+      this.logger.info("Creating new default settings.");
+      prnfbSettingsData = defaultSettingsData();
+    }
+    final List<PrnfbNotification> notifications = newArrayList();
+    for (final UUID uuid : readIndex(NOTIFICATIONS_STORAGE_KEY)) {
+      final String notification = (String) this.pluginSettings.get(notificationStorageKey(uuid));
+      if (notification != null) {
+        notifications.add(gson.fromJson(notification, PrnfbNotification.class));
       }
     }
+    final List<PrnfbButton> buttons = newArrayList();
+    for (final UUID uuid : readIndex(BUTTONS_STORAGE_KEY)) {
+      final String button = (String) this.pluginSettings.get(buttonStorageKey(uuid));
+      if (button != null) {
+        buttons.add(gson.fromJson(button, PrnfbButton.class));
+      }
+    }
+    return prnfbSettingsBuilder() //
+        .setPrnfbSettingsData(prnfbSettingsData) //
+        .setNotifications(notifications) //
+        .setButtons(buttons) //
+        .build();
+  }
 
-    if (cachedSettings == null) {
-      // Empty initialization case (rare):  don't bother setting any cache.
-      this.logger.info("Creating new default settings.");
-      return prnfbSettingsBuilder() //
-          .setPrnfbSettingsData( //
-              prnfbSettingsDataBuilder() //
-                  .setAdminRestriction(USER_LEVEL.ADMIN) //
-                  .build()) //
-          .build();
-    } else {
-      return cachedSettings;
+  /** The settings data is written last when migrating, so it marks that migration is done. */
+  private boolean needsMigration() {
+    return this.pluginSettings.get(SETTINGS_DATA_STORAGE_KEY) == null
+        && this.pluginSettings.get(SETTINGS_STORAGE_KEY) != null;
+  }
+
+  private void migrate() {
+    inSynchronizedTransaction(
+        new TransactionCallback<Void>() {
+          @Override
+          public Void doInTransaction() {
+            synchronized (lock) {
+              if (needsMigration()) {
+                final String legacy = (String) pluginSettings.get(SETTINGS_STORAGE_KEY);
+                doMigrate(gson.fromJson(legacy, PrnfbSettings.class));
+                changeVersion();
+              }
+            }
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Splits settings stored as one document. The settings data is written after the notifications
+   * and buttons, so an interrupted migration is done again. The old document is left as it is.
+   */
+  private void doMigrate(PrnfbSettings legacy) {
+    // Documents stored by old versions may lack any of these
+    final List<PrnfbNotification> notifications =
+        firstNonNull(legacy.getNotifications(), ImmutableList.<PrnfbNotification>of());
+    final List<PrnfbButton> buttons =
+        firstNonNull(legacy.getButtons(), ImmutableList.<PrnfbButton>of());
+    final PrnfbSettingsData data =
+        firstNonNull(legacy.getPrnfbSettingsData(), defaultSettingsData());
+    this.logger.info(
+        "Migrating "
+            + notifications.size()
+            + " notifications and "
+            + buttons.size()
+            + " buttons to one storage key each.");
+    final List<UUID> notificationUuids = newArrayList();
+    for (final PrnfbNotification notification : notifications) {
+      this.pluginSettings.put(
+          notificationStorageKey(notification.getUuid()), gson.toJson(notification));
+      notificationUuids.add(notification.getUuid());
+    }
+    writeIndex(NOTIFICATIONS_STORAGE_KEY, notificationUuids);
+    final List<UUID> buttonUuids = newArrayList();
+    for (final PrnfbButton button : buttons) {
+      this.pluginSettings.put(buttonStorageKey(button.getUuid()), gson.toJson(button));
+      buttonUuids.add(button.getUuid());
     }
+    writeIndex(BUTTONS_STORAGE_KEY, buttonUuids);
+    this.pluginSettings.put(SETTINGS_DATA_STORAGE_KEY, gson.toJson(data));
   }
 
-  private void doSetPrnfbSettings(PrnfbSettings newSettings) {
-    final PrnfbSettingsData oldSettingsData = doGetPrnfbSettings(false).getPrnfbSettingsData();
-    final PrnfbSettingsData newSettingsData = newSettings.getPrnfbSettingsData();
-    final String keyStorePassword =
-        keepIfUnchanged(
-            newSettingsData.getKeyStorePassword(), oldSettingsData.getKeyStorePassword());
+  private void doSetPrnfbSettingsData(PrnfbSettingsData newSettingsData) {
+    synchronized (lock) {
+      final PrnfbSettings originalSettings = doGetPrnfbSettings(true);
+      final PrnfbSettingsData oldSettingsData = originalSettings.getPrnfbSettingsData();
+      final String keyStorePassword =
+          keepIfUnchanged(
+              newSettingsData.getKeyStorePassword(), oldSettingsData.getKeyStorePassword());
+
+      final PrnfbSettingsData adjustedSettingsData =
+          prnfbSettingsDataBuilder(newSettingsData) //
+              .setKeyStorePassword(keyStorePassword) //
+              .build();
+
+      final String data = gson.toJson(adjustedSettingsData);
+      this.pluginSettings.put(SETTINGS_DATA_STORAGE_KEY, data);
+      cache(
+          prnfbSettingsBuilder(originalSettings) //
+              .setPrnfbSettingsData(gson.fromJson(data, PrnfbSettingsData.class)) //
+              .build());
+      changeVersion();
+    }
+  }
 
-    final PrnfbSettingsData adjustedSettingsData =
-        prnfbSettingsDataBuilder(newSettingsData) //
-            .setKeyStorePassword(keyStorePassword) //
-            .build();
+  /**
+   * Stores the entity in its own key, and last in the index.
+   *
+   * @return The entity as it will be read from storage.
+   */
+  private <T extends HasUuid> T storeEntity(
+      String indexKey, String entityKey, T entity, Class<T> type) {
+    final String data = gson.toJson(entity);
+    this.pluginSettings.put(entityKey, data);
+    final List<UUID> index = readIndex(indexKey);
+    index.remove(entity.getUuid());
+    index.add(entity.getUuid());
+    writeIndex(indexKey, index);
+    return gson.fromJson(data, type);
+  }
 
-    final PrnfbSettings adjustedSettings =
-        prnfbSettingsBuilder(newSettings) //
-            .setPrnfbSettingsData(adjustedSettingsData) //
-            .build();
+  private void removeEntity(String indexKey, String entityKey, UUID uuid) {
+    final List<UUID> index = readIndex(indexKey);
+    if (index.remove(uuid)) {
+      writeIndex(indexKey, index);
+    }
+    this.pluginSettings.remove(entityKey);
+  }
+
+  private List<UUID> readIndex(String indexKey) {
+    final String index = (String) this.pluginSettings.get(indexKey);
+    if (index == null) {
+      return newArrayList();
+    }
+    return gson.fromJson(index, uuidListType);
+  }
+
+  private void writeIndex(String indexKey, List<UUID> uuids) {
+    this.pluginSettings.put(indexKey, gson.toJson(uuids, uuidListType));
+  }
 
-    final String data = gson.toJson(adjustedSettings);
-    final PrnfbSettings adjustedSettingsReparsed = gson.fromJson(data, PrnfbSettings.class);
-    this.pluginSettings.put(SETTINGS_STORAGE_KEY, data);
-    cachedSettings = adjustedSettingsReparsed;
+  private <T extends HasUuid> List<T> withoutUuid(List<T> entities, UUID uuid) {
+    return newArrayList(filter(entities, not(withUuid(uuid))));
   }
 
   private synchronized <T> T inSynchronizedTransaction(TransactionCallback<T> transactionCallback) {
@@ -4,11 +4,16 @@ import static com.atlassian.bitbucket.permission.Permission.PROJECT_ADMIN;
 import static com.atlassian.bitbucket.permission.Permission.REPO_ADMIN;
 import static com.atlassian.bitbucket.permission.Permission.SYS_ADMIN;
 import static com.google.common.base.Strings.emptyToNull;
-import static com.google.common.collect.Iterables.filter;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 import static se.bjurr.prnfb.settings.USER_LEVEL.ADMIN;
 import static se.bjurr.prnfb.settings.USER_LEVEL.EVERYONE;
 
+import com.atlassian.bitbucket.event.permission.PermissionEvent;
 import com.atlassian.bitbucket.permission.PermissionService;
 import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.project.ProjectService;
@@ -16,11 +21,16 @@ import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.repository.RepositoryService;
 import com.atlassian.bitbucket.user.SecurityService;
 import com.atlassian.bitbucket.util.Operation;
+import com.atlassian.event.api.EventListener;
 import com.atlassian.sal.api.user.UserKey;
 import com.atlassian.sal.api.user.UserManager;
 import com.atlassian.sal.api.user.UserProfile;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import se.bjurr.prnfb.settings.Restricted;
@@ -28,6 +38,12 @@ import se.bjurr.prnfb.settings.USER_LEVEL;
 
 public class UserCheckService {
   private static final Logger LOG = getLogger(UserCheckService.class);
+  private static final long DECISIONS_CACHE_SECONDS = 30L;
+  private final Cache<List<Object>, Boolean> decisions =
+      CacheBuilder.newBuilder() //
+          .maximumSize(10000) //
+          .expireAfterWrite(DECISIONS_CACHE_SECONDS, SECONDS) //
+          .build();
   private final PermissionService permissionService;
   private final ProjectService projectService;
   private final RepositoryService repositoryService;
@@ -50,20 +66,33 @@ public class UserCheckService {
     this.securityService = securityService;
   }
 
-  public <R extends Restricted> Iterable<R> filterAllowed(USER_LEVEL adminRestriction, List<R> r) {
-    return filter(
-        r,
-        (c) ->
-            isAllowed( //
-                adminRestriction, //
-                c.getProjectKey().orNull(), //
-                c.getRepositorySlug().orNull()));
+  /**
+   * @return The allowed items, in the given order. Permissions are resolved once per distinct
+   *     project and repository, not once per item.
+   */
+  public <R extends Restricted> List<R> filterAllowed(USER_LEVEL adminRestriction, List<R> list) {
+    final Map<List<String>, Boolean> allowedPerScope = newHashMap();
+    final List<R> allowed = newArrayList();
+    for (final R candidate : list) {
+      final String projectKey = candidate.getProjectKey().orNull();
+      final String repositorySlug = candidate.getRepositorySlug().orNull();
+      final List<String> scope = asList(projectKey, repositorySlug);
+      Boolean isAllowed = allowedPerScope.get(scope);
+      if (isAllowed == null) {
+        isAllowed = isAllowed(adminRestriction, projectKey, repositorySlug);
+        allowedPerScope.put(scope, isAllowed);
+      }
+      if (isAllowed) {
+        allowed.add(candidate);
+      }
+    }
+    return allowed;
   }
 
-  public <R extends Restricted> Iterable<R> filterAdminAllowed(List<R> list) {
+  public <R extends Restricted> List<R> filterAdminAllowed(List<R> list) {
     final USER_LEVEL adminRestriction =
         settingsService.getPrnfbSettingsData().getAdminRestriction();
-    return filter(list, (r) -> isAdminAllowed(r, adminRestriction));
+    return filterAllowed(adminRestriction, list);
   }
 
   @VisibleForTesting
@@ -148,12 +177,34 @@ public class UserCheckService {
     return isAllowed(adminRestriction, projectKey, repositorySlug);
   }
 
+  /**
+   * Decisions are cached for a short while, listing hundreds of notifications would otherwise make
+   * hundreds of permission checks. Changed permissions are seen at once on this node, and within
+   * {@link #DECISIONS_CACHE_SECONDS} on other nodes.
+   */
   public boolean isAllowed(
       USER_LEVEL userLevel, @Nullable String projectKey, @Nullable String repositorySlug) {
     final UserKey userKey = userManager.getRemoteUser().getUserKey();
-    final boolean isAdmin = isAdmin(userKey, projectKey, repositorySlug);
-    final boolean isSystemAdmin = isSystemAdmin(userKey);
-    return isAllowed(userLevel, isAdmin, isSystemAdmin);
+    if (userLevel == EVERYONE) {
+      return true;
+    }
+    final List<Object> key = asList(userKey, projectKey, repositorySlug, userLevel);
+    try {
+      return decisions.get(
+          key,
+          () -> {
+            final boolean isAdmin = isAdmin(userKey, projectKey, repositorySlug);
+            final boolean isSystemAdmin = isSystemAdmin(userKey);
+            return isAllowed(userLevel, isAdmin, isSystemAdmin);
+          });
+    } catch (final ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  @EventListener
+  public void onPermissionEvent(final PermissionEvent event) {
+    decisions.invalidateAll();
   }
 
   boolean isAllowed(USER_LEVEL userLevel, boolean isAdmin, boolean isSystemAdmin) {
@@ -166,6 +217,16 @@ public class UserCheckService {
     return userManager.isSystemAdmin(userKey);
   }
 
+  /** @return The current user, or null if anonymous. */
+  @Nullable
+  public UserKey getUserKey() {
+    final UserProfile user = userManager.getRemoteUser();
+    if (user == null) {
+      return null;
+    }
+    return user.getUserKey();
+  }
+
   public boolean isViewAllowed() {
     final UserProfile user = userManager.getRemoteUser();
     if (user == null) {
@@ -66,6 +66,7 @@ public class VariablesContext {
   private final PullRequestEvent pullRequestEvent;
   private final String formData;
   private final List<String> groups;
+  private final PrnfbVariableCache variableCache = new PrnfbVariableCache();
 
   public VariablesContext(VariablesContextBuilder b) {
     this.button = b.button;
@@ -78,6 +79,15 @@ public class VariablesContext {
     return groups;
   }
 
+  /**
+   * Shared by all renderers created with this context. A context should therefore only be used for
+   * one pull request and user, like the notifications of one event or the buttons of one pull
+   * request.
+   */
+  public PrnfbVariableCache getVariableCache() {
+    return variableCache;
+  }
+
   public Map<PrnfbVariable, Supplier<String>> getVariables() {
     final Map<PrnfbVariable, Supplier<String>> variables = new HashMap<>();
 
@@ -0,0 +1,14 @@
+package se.bjurr.prnfb.settings;
+
+/** What to do with a delivery when the queue of its destination host is full. */
+public enum DELIVERY_OVERFLOW {
+  /** Drop the oldest queued delivery to make room for the new one. */
+  DROP_OLDEST,
+  /**
+   * Replace a queued delivery of the same notification and pull request with the new one. Rejects
+   * if there is no such delivery.
+   */
+  COALESCE,
+  /** Reject the new delivery. */
+  REJECT
+}
@@ -0,0 +1,68 @@
+package se.bjurr.prnfb.settings;
+
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+import com.google.common.base.Optional;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The buttons, or notifications, of a {@link PrnfbSettings} indexed on UUID, project and
+ * repository. The lists are returned in the same order as the entities are configured.
+ */
+public class PrnfbEntityIndex<T extends HasUuid & Restricted> {
+
+  private final Map<UUID, T> byUuid = newHashMap();
+  private final Map<String, List<T>> byProject = newHashMap();
+  private final Map<List<String>, List<T>> byProjectAndRepository = newHashMap();
+
+  public PrnfbEntityIndex(List<T> entities) {
+    for (final T entity : entities) {
+      byUuid.put(entity.getUuid(), entity);
+      if (!entity.getProjectKey().isPresent()) {
+        continue;
+      }
+      final String projectKey = entity.getProjectKey().get();
+      add(byProject, projectKey, entity);
+      if (entity.getRepositorySlug().isPresent()) {
+        add(byProjectAndRepository, asList(projectKey, entity.getRepositorySlug().get()), entity);
+      }
+    }
+  }
+
+  private static <K, T> void add(Map<K, List<T>> map, K key, T entity) {
+    List<T> entities = map.get(key);
+    if (entities == null) {
+      entities = newArrayList();
+      map.put(key, entities);
+    }
+    entities.add(entity);
+  }
+
+  public Optional<T> find(UUID uuid) {
+    return fromNullable(byUuid.get(uuid));
+  }
+
+  /** @return Entities scoped to the project, with or without a repository. */
+  public List<T> findByProject(String projectKey) {
+    return unmodifiable(byProject.get(projectKey));
+  }
+
+  /** @return Entities scoped to the repository. */
+  public List<T> findByRepository(String projectKey, String repositorySlug) {
+    return unmodifiable(byProjectAndRepository.get(asList(projectKey, repositorySlug)));
+  }
+
+  private List<T> unmodifiable(List<T> entities) {
+    if (entities == null) {
+      return emptyList();
+    }
+    return unmodifiableList(entities);
+  }
+}
@@ -1,7 +1,9 @@
 package se.bjurr.prnfb.settings;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Optional.of;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.emptyToNull;
 import static com.google.common.base.Strings.nullToEmpty;
@@ -17,6 +19,7 @@ import com.google.common.base.Optional;
 import java.net.URL;
 import java.util.List;
 import java.util.UUID;
+import java.util.regex.Pattern;
 import se.bjurr.prnfb.http.UrlInvoker.HTTP_METHOD;
 import se.bjurr.prnfb.listener.PrnfbPullRequestAction;
 import se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR;
@@ -51,6 +54,15 @@ public class PrnfbNotification implements HasUuid, Restricted {
   private final ENCODE_FOR postContentEncoding;
   private final String proxySchema;
   private final String httpVersion;
+  private final Integer debounceSeconds;
+  private final Integer retryBackoffSeconds;
+  private final Integer retryMaxAttempts;
+
+  /** Compiled regexps. Compiled when first used if the notification was deserialized. */
+  private transient volatile Pattern filterPattern;
+
+  private transient volatile Pattern injectionUrlPattern;
+  private transient volatile Pattern variablePattern;
 
   public PrnfbNotification(final PrnfbNotificationBuilder builder) throws ValidationException {
     this.uuid = firstNonNull(builder.getUUID(), randomUUID());
@@ -71,12 +83,8 @@ public class PrnfbNotification implements HasUuid, Restricted {
       throw new ValidationException("url", "URL not valid!");
     }
     if (!nullToEmpty(builder.getFilterRegexp()).trim().isEmpty()) {
-      try {
-        compile(builder.getFilterRegexp());
-      } catch (final Exception e) {
-        throw new ValidationException(
-            "filter_regexp", "Filter regexp not valid! " + e.getMessage().replaceAll("\n", " "));
-      }
+      this.filterPattern =
+          validatedPattern("filter_regexp", "Filter regexp", builder.getFilterRegexp());
       if (nullToEmpty(builder.getFilterString()).trim().isEmpty()) {
         throw new ValidationException(
             "filter_string", "Filter string not set, nothing to match regexp against!");
@@ -97,9 +105,31 @@ public class PrnfbNotification implements HasUuid, Restricted {
     this.injectionUrlRegexp = emptyToNull(nullToEmpty(builder.getInjectionUrlRegexp()).trim());
     this.variableName = emptyToNull(nullToEmpty(builder.getVariableName()).trim());
     this.variableRegex = emptyToNull(nullToEmpty(builder.getVariableRegex()).trim());
+    if (this.injectionUrlRegexp != null) {
+      this.injectionUrlPattern =
+          validatedPattern("injection_url_regexp", "Injection URL regexp", this.injectionUrlRegexp);
+    }
+    if (this.variableRegex != null) {
+      this.variablePattern =
+          validatedPattern("variable_regex", "Variable regex", this.variableRegex);
+    }
     this.triggerIgnoreStateList = builder.getTriggerIgnoreStateList();
     this.postContentEncoding = firstNonNull(builder.getPostContentEncoding(), NONE);
     this.httpVersion = builder.getHttpVersion();
+    this.debounceSeconds = builder.getDebounceSeconds();
+    this.retryBackoffSeconds = builder.getRetryBackoffSeconds();
+    this.retryMaxAttempts = builder.getRetryMaxAttempts();
+  }
+
+  private static Pattern validatedPattern(
+      final String field, final String description, final String regexp)
+      throws ValidationException {
+    try {
+      return compile(regexp.trim());
+    } catch (final Exception e) {
+      throw new ValidationException(
+          field, description + " not valid! " + e.getMessage().replaceAll("\n", " "));
+    }
   }
 
   @Override
@@ -239,6 +269,27 @@ public class PrnfbNotification implements HasUuid, Restricted {
     } else if (!proxyUser.equals(other.proxyUser)) {
       return false;
     }
+    if (retryMaxAttempts == null) {
+      if (other.retryMaxAttempts != null) {
+        return false;
+      }
+    } else if (!retryMaxAttempts.equals(other.retryMaxAttempts)) {
+      return false;
+    }
+    if (retryBackoffSeconds == null) {
+      if (other.retryBackoffSeconds != null) {
+        return false;
+      }
+    } else if (!retryBackoffSeconds.equals(other.retryBackoffSeconds)) {
+      return false;
+    }
+    if (debounceSeconds == null) {
+      if (other.debounceSeconds != null) {
+        return false;
+      }
+    } else if (!debounceSeconds.equals(other.debounceSeconds)) {
+      return false;
+    }
     if (repositorySlug == null) {
       if (other.repositorySlug != null) {
         return false;
@@ -294,6 +345,19 @@ public class PrnfbNotification implements HasUuid, Restricted {
     return fromNullable(this.filterRegexp);
   }
 
+  /** Compiled {@link #getFilterRegexp()}, so that it is not compiled for every event. */
+  public Optional<Pattern> getFilterPattern() {
+    if (this.filterRegexp == null) {
+      return absent();
+    }
+    Pattern pattern = this.filterPattern;
+    if (pattern == null) {
+      pattern = compile(this.filterRegexp);
+      this.filterPattern = pattern;
+    }
+    return of(pattern);
+  }
+
   public Optional<String> getFilterString() {
     return fromNullable(this.filterString);
   }
@@ -310,6 +374,18 @@ public class PrnfbNotification implements HasUuid, Restricted {
     return fromNullable(this.injectionUrlRegexp);
   }
 
+  public Optional<Pattern> getInjectionUrlPattern() {
+    if (this.injectionUrlRegexp == null) {
+      return absent();
+    }
+    Pattern pattern = this.injectionUrlPattern;
+    if (pattern == null) {
+      pattern = compile(this.injectionUrlRegexp);
+      this.injectionUrlPattern = pattern;
+    }
+    return of(pattern);
+  }
+
   public Optional<String> getVariableName() {
     return fromNullable(this.variableName);
   }
@@ -318,6 +394,18 @@ public class PrnfbNotification implements HasUuid, Restricted {
     return fromNullable(this.variableRegex);
   }
 
+  public Optional<Pattern> getVariablePattern() {
+    if (this.variableRegex == null) {
+      return absent();
+    }
+    Pattern pattern = this.variablePattern;
+    if (pattern == null) {
+      pattern = compile(this.variableRegex);
+      this.variablePattern = pattern;
+    }
+    return of(pattern);
+  }
+
   public HTTP_METHOD getMethod() {
     return this.method;
   }
@@ -417,6 +505,9 @@ public class PrnfbNotification implements HasUuid, Restricted {
     result = prime * result + (proxyServer == null ? 0 : proxyServer.hashCode());
     result = prime * result + (proxyUser == null ? 0 : proxyUser.hashCode());
     result = prime * result + (repositorySlug == null ? 0 : repositorySlug.hashCode());
+    result = prime * result + (debounceSeconds == null ? 0 : debounceSeconds.hashCode());
+    result = prime * result + (retryBackoffSeconds == null ? 0 : retryBackoffSeconds.hashCode());
+    result = prime * result + (retryMaxAttempts == null ? 0 : retryMaxAttempts.hashCode());
     result = prime * result + (triggerIfCanMerge == null ? 0 : triggerIfCanMerge.hashCode());
     result =
         prime * result + (triggerIgnoreStateList == null ? 0 : triggerIgnoreStateList.hashCode());
@@ -484,6 +575,12 @@ public class PrnfbNotification implements HasUuid, Restricted {
         + proxySchema
         + ", httpVersion="
         + httpVersion
+        + ", retryMaxAttempts="
+        + retryMaxAttempts
+        + ", retryBackoffSeconds="
+        + retryBackoffSeconds
+        + ", debounceSeconds="
+        + debounceSeconds
         + "]";
   }
 
@@ -494,4 +591,16 @@ public class PrnfbNotification implements HasUuid, Restricted {
   public String getHttpVersion() {
     return httpVersion;
   }
+
+  public Integer getRetryMaxAttempts() {
+    return retryMaxAttempts;
+  }
+
+  public Integer getRetryBackoffSeconds() {
+    return retryBackoffSeconds;
+  }
+
+  public Integer getDebounceSeconds() {
+    return debounceSeconds;
+  }
 }
@@ -45,7 +45,10 @@ public class PrnfbNotificationBuilder {
       final UUID uuid,
       final ENCODE_FOR postContentEncoding,
       final String proxySchema,
-      final String httpVersion) {
+      final String httpVersion,
+      final Integer retryMaxAttempts,
+      final Integer retryBackoffSeconds,
+      final Integer debounceSeconds) {
     this.filterRegexp = filterRegexp;
     this.filterString = filterString;
     this.headers = headers;
@@ -73,6 +76,9 @@ public class PrnfbNotificationBuilder {
     this.postContentEncoding = postContentEncoding;
     this.proxySchema = proxySchema;
     this.httpVersion = httpVersion;
+    this.retryMaxAttempts = retryMaxAttempts;
+    this.retryBackoffSeconds = retryBackoffSeconds;
+    this.debounceSeconds = debounceSeconds;
   }
 
   public static PrnfbNotificationBuilder prnfbNotificationBuilder(final PrnfbNotification from) {
@@ -105,6 +111,9 @@ public class PrnfbNotificationBuilder {
     b.triggerIfCanMerge = from.getTriggerIfCanMerge();
     b.postContentEncoding = from.getPostContentEncoding();
     b.httpVersion = from.getHttpVersion();
+    b.debounceSeconds = from.getDebounceSeconds();
+    b.retryBackoffSeconds = from.getRetryBackoffSeconds();
+    b.retryMaxAttempts = from.getRetryMaxAttempts();
     return b;
   }
 
@@ -135,6 +144,9 @@ public class PrnfbNotificationBuilder {
   private ENCODE_FOR postContentEncoding;
   private String proxySchema;
   private String httpVersion;
+  private Integer debounceSeconds;
+  private Integer retryBackoffSeconds;
+  private Integer retryMaxAttempts;
 
   private PrnfbNotificationBuilder() {
     this.uuid = randomUUID();
@@ -412,4 +424,31 @@ public class PrnfbNotificationBuilder {
     this.httpVersion = httpVersion;
     return this;
   }
+
+  public Integer getRetryMaxAttempts() {
+    return retryMaxAttempts;
+  }
+
+  public PrnfbNotificationBuilder withRetryMaxAttempts(final Integer retryMaxAttempts) {
+    this.retryMaxAttempts = retryMaxAttempts;
+    return this;
+  }
+
+  public Integer getRetryBackoffSeconds() {
+    return retryBackoffSeconds;
+  }
+
+  public PrnfbNotificationBuilder withRetryBackoffSeconds(final Integer retryBackoffSeconds) {
+    this.retryBackoffSeconds = retryBackoffSeconds;
+    return this;
+  }
+
+  public Integer getDebounceSeconds() {
+    return debounceSeconds;
+  }
+
+  public PrnfbNotificationBuilder withDebounceSeconds(final Integer debounceSeconds) {
+    this.debounceSeconds = debounceSeconds;
+    return this;
+  }
 }
@@ -0,0 +1,99 @@
+package se.bjurr.prnfb.settings;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newTreeSet;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import se.bjurr.prnfb.listener.PrnfbPullRequestAction;
+
+/**
+ * The notifications of a {@link PrnfbSettings}, indexed on trigger, project and repository. Makes
+ * it possible to find the notifications that may be triggered by an event without visiting every
+ * configured notification.<br>
+ * <br>
+ * Notifications without project or repository are indexed with a wildcard and are found for any
+ * project or repository. The notifications are returned in the same order as they are configured.
+ */
+public class PrnfbNotificationIndex {
+
+  /** Project keys and repository slugs are never empty, so this can not clash with a real key. */
+  private static final String ANY = "";
+
+  private final Map<PrnfbPullRequestAction, Map<String, Map<String, List<Integer>>>> index =
+      new EnumMap<>(PrnfbPullRequestAction.class);
+  private final List<PrnfbNotification> notifications;
+
+  public PrnfbNotificationIndex(List<PrnfbNotification> notifications) {
+    this.notifications = unmodifiableList(newArrayList(notifications));
+    for (int i = 0; i < this.notifications.size(); i++) {
+      final PrnfbNotification notification = this.notifications.get(i);
+      final String projectKey = notification.getProjectKey().or(ANY);
+      final String repositorySlug = notification.getRepositorySlug().or(ANY);
+      for (final PrnfbPullRequestAction trigger : notification.getTriggers()) {
+        Map<String, Map<String, List<Integer>>> byProject = index.get(trigger);
+        if (byProject == null) {
+          byProject = newHashMap();
+          index.put(trigger, byProject);
+        }
+        Map<String, List<Integer>> byRepository = byProject.get(projectKey);
+        if (byRepository == null) {
+          byRepository = newHashMap();
+          byProject.put(projectKey, byRepository);
+        }
+        List<Integer> positions = byRepository.get(repositorySlug);
+        if (positions == null) {
+          positions = newArrayList();
+          byRepository.put(repositorySlug, positions);
+        }
+        positions.add(i);
+      }
+    }
+  }
+
+  /**
+   * @return Notifications that have any of the given actions as trigger and that are either
+   *     unscoped or scoped to the given project and repository.
+   */
+  public List<PrnfbNotification> find(
+      Iterable<PrnfbPullRequestAction> actions, String projectKey, String repositorySlug) {
+    final SortedSet<Integer> found = newTreeSet();
+    for (final PrnfbPullRequestAction action : actions) {
+      final Map<String, Map<String, List<Integer>>> byProject = index.get(action);
+      if (byProject == null) {
+        continue;
+      }
+      addAll(found, byProject.get(ANY), repositorySlug);
+      if (projectKey != null) {
+        addAll(found, byProject.get(projectKey), repositorySlug);
+      }
+    }
+    final List<PrnfbNotification> candidates = newArrayListWithCapacity(found.size());
+    for (final Integer position : found) {
+      candidates.add(notifications.get(position));
+    }
+    return candidates;
+  }
+
+  private void addAll(
+      SortedSet<Integer> found, Map<String, List<Integer>> byRepository, String repositorySlug) {
+    if (byRepository == null) {
+      return;
+    }
+    addAll(found, byRepository.get(ANY));
+    if (repositorySlug != null) {
+      addAll(found, byRepository.get(repositorySlug));
+    }
+  }
+
+  private void addAll(SortedSet<Integer> found, List<Integer> positions) {
+    if (positions != null) {
+      found.addAll(positions);
+    }
+  }
+}
@@ -10,6 +10,11 @@ public class PrnfbSettings {
   private final List<PrnfbButton> buttons;
   private List<PrnfbNotification> notifications = newArrayList();
   private final PrnfbSettingsData prnfbSettingsData;
+  /** Built when first needed, settings are re-created whenever they are changed or reloaded. */
+  private transient volatile PrnfbNotificationIndex notificationIndex;
+
+  private transient volatile PrnfbEntityIndex<PrnfbNotification> notificationsIndex;
+  private transient volatile PrnfbEntityIndex<PrnfbButton> buttonsIndex;
 
   public PrnfbSettings(PrnfbSettingsBuilder builder) {
     this.notifications = checkNotNull(builder.getNotifications());
@@ -61,6 +66,33 @@ public class PrnfbSettings {
     return this.notifications;
   }
 
+  public PrnfbNotificationIndex getNotificationIndex() {
+    PrnfbNotificationIndex index = this.notificationIndex;
+    if (index == null) {
+      index = new PrnfbNotificationIndex(this.notifications);
+      this.notificationIndex = index;
+    }
+    return index;
+  }
+
+  public PrnfbEntityIndex<PrnfbNotification> getNotificationsIndex() {
+    PrnfbEntityIndex<PrnfbNotification> index = this.notificationsIndex;
+    if (index == null) {
+      index = new PrnfbEntityIndex<>(this.notifications);
+      this.notificationsIndex = index;
+    }
+    return index;
+  }
+
+  public PrnfbEntityIndex<PrnfbButton> getButtonsIndex() {
+    PrnfbEntityIndex<PrnfbButton> index = this.buttonsIndex;
+    if (index == null) {
+      index = new PrnfbEntityIndex<>(this.buttons);
+      this.buttonsIndex = index;
+    }
+    return index;
+  }
+
   public PrnfbSettingsData getPrnfbSettingsData() {
     return this.prnfbSettingsData;
   }
@@ -1,12 +1,26 @@
 package se.bjurr.prnfb.settings;
 
+import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Strings.emptyToNull;
 
 import com.google.common.base.Optional;
 
 public class PrnfbSettingsData {
+  public static final int DEFAULT_DELIVERY_CONNECTIONS_PER_HOST = 8;
+  public static final int DEFAULT_DELIVERY_CONNECTIONS_TOTAL = 42;
+  public static final int DEFAULT_DELIVERY_HISTORY_SIZE = 25;
+  public static final DELIVERY_OVERFLOW DEFAULT_DELIVERY_OVERFLOW = DELIVERY_OVERFLOW.REJECT;
+  public static final int DEFAULT_DELIVERY_QUEUE_SIZE = 1000;
+  public static final int DEFAULT_DELIVERY_WORKERS = 48;
+
   private final USER_LEVEL adminRestriction;
+  private final Integer deliveryConnectionsPerHost;
+  private final Integer deliveryConnectionsTotal;
+  private final Integer deliveryHistorySize;
+  private final DELIVERY_OVERFLOW deliveryOverflow;
+  private final Integer deliveryQueueSize;
+  private final Integer deliveryWorkers;
   private final String keyStore;
   private final String keyStorePassword;
   private final String keyStoreType;
@@ -18,6 +32,12 @@ public class PrnfbSettingsData {
     this.keyStorePassword = null;
     this.shouldAcceptAnyCertificate = false;
     this.adminRestriction = null;
+    this.deliveryWorkers = null;
+    this.deliveryQueueSize = null;
+    this.deliveryOverflow = null;
+    this.deliveryConnectionsPerHost = null;
+    this.deliveryConnectionsTotal = null;
+    this.deliveryHistorySize = null;
   }
 
   public PrnfbSettingsData(PrnfbSettingsDataBuilder builder) {
@@ -26,6 +46,12 @@ public class PrnfbSettingsData {
     this.keyStorePassword = emptyToNull(builder.getKeyStorePassword());
     this.shouldAcceptAnyCertificate = builder.shouldAcceptAnyCertificate();
     this.adminRestriction = builder.getAdminRestriction();
+    this.deliveryWorkers = builder.getDeliveryWorkers();
+    this.deliveryQueueSize = builder.getDeliveryQueueSize();
+    this.deliveryOverflow = builder.getDeliveryOverflow();
+    this.deliveryConnectionsPerHost = builder.getDeliveryConnectionsPerHost();
+    this.deliveryConnectionsTotal = builder.getDeliveryConnectionsTotal();
+    this.deliveryHistorySize = builder.getDeliveryHistorySize();
   }
 
   @Override
@@ -43,6 +69,24 @@ public class PrnfbSettingsData {
     if (this.adminRestriction != other.adminRestriction) {
       return false;
     }
+    if (getDeliveryConnectionsPerHost() != other.getDeliveryConnectionsPerHost()) {
+      return false;
+    }
+    if (getDeliveryConnectionsTotal() != other.getDeliveryConnectionsTotal()) {
+      return false;
+    }
+    if (getDeliveryHistorySize() != other.getDeliveryHistorySize()) {
+      return false;
+    }
+    if (getDeliveryOverflow() != other.getDeliveryOverflow()) {
+      return false;
+    }
+    if (getDeliveryQueueSize() != other.getDeliveryQueueSize()) {
+      return false;
+    }
+    if (getDeliveryWorkers() != other.getDeliveryWorkers()) {
+      return false;
+    }
     if (this.keyStore == null) {
       if (other.keyStore != null) {
         return false;
@@ -74,6 +118,35 @@ public class PrnfbSettingsData {
     return this.adminRestriction;
   }
 
+  /** Connections kept open to each host, a busy host may get more. */
+  public int getDeliveryConnectionsPerHost() {
+    return firstNonNull(this.deliveryConnectionsPerHost, DEFAULT_DELIVERY_CONNECTIONS_PER_HOST);
+  }
+
+  /** Max number of connections kept open, to all hosts. */
+  public int getDeliveryConnectionsTotal() {
+    return firstNonNull(this.deliveryConnectionsTotal, DEFAULT_DELIVERY_CONNECTIONS_TOTAL);
+  }
+
+  /** Number of successful, failed and erroneous deliveries shown on the tracing page, each. */
+  public int getDeliveryHistorySize() {
+    return firstNonNull(this.deliveryHistorySize, DEFAULT_DELIVERY_HISTORY_SIZE);
+  }
+
+  public DELIVERY_OVERFLOW getDeliveryOverflow() {
+    return firstNonNull(this.deliveryOverflow, DEFAULT_DELIVERY_OVERFLOW);
+  }
+
+  /** Max number of deliveries queued per destination host. */
+  public int getDeliveryQueueSize() {
+    return firstNonNull(this.deliveryQueueSize, DEFAULT_DELIVERY_QUEUE_SIZE);
+  }
+
+  /** Number of threads sending notifications. */
+  public int getDeliveryWorkers() {
+    return firstNonNull(this.deliveryWorkers, DEFAULT_DELIVERY_WORKERS);
+  }
+
   public Optional<String> getKeyStore() {
     return fromNullable(this.keyStore);
   }
@@ -92,6 +165,12 @@ public class PrnfbSettingsData {
     int result = 1;
     result =
         prime * result + ((this.adminRestriction == null) ? 0 : this.adminRestriction.hashCode());
+    result = prime * result + getDeliveryConnectionsPerHost();
+    result = prime * result + getDeliveryConnectionsTotal();
+    result = prime * result + getDeliveryHistorySize();
+    result = prime * result + getDeliveryOverflow().hashCode();
+    result = prime * result + getDeliveryQueueSize();
+    result = prime * result + getDeliveryWorkers();
     result = prime * result + ((this.keyStore == null) ? 0 : this.keyStore.hashCode());
     result =
         prime * result + ((this.keyStorePassword == null) ? 0 : this.keyStorePassword.hashCode());
@@ -116,6 +195,18 @@ public class PrnfbSettingsData {
         + this.shouldAcceptAnyCertificate
         + ", adminRestriction="
         + this.adminRestriction
+        + ", deliveryWorkers="
+        + getDeliveryWorkers()
+        + ", deliveryQueueSize="
+        + getDeliveryQueueSize()
+        + ", deliveryOverflow="
+        + getDeliveryOverflow()
+        + ", deliveryHistorySize="
+        + getDeliveryHistorySize()
+        + ", deliveryConnectionsPerHost="
+        + getDeliveryConnectionsPerHost()
+        + ", deliveryConnectionsTotal="
+        + getDeliveryConnectionsTotal()
         + "]";
   }
 }
@@ -10,6 +10,12 @@ public class PrnfbSettingsDataBuilder {
   }
 
   private USER_LEVEL adminRestriction;
+  private Integer deliveryConnectionsPerHost;
+  private Integer deliveryConnectionsTotal;
+  private Integer deliveryHistorySize;
+  private DELIVERY_OVERFLOW deliveryOverflow;
+  private Integer deliveryQueueSize;
+  private Integer deliveryWorkers;
   private String keyStore;
   private String keyStorePassword;
   private String keyStoreType;
@@ -23,6 +29,12 @@ public class PrnfbSettingsDataBuilder {
     this.keyStoreType = settings.getKeyStoreType();
     this.keyStorePassword = settings.getKeyStorePassword().orNull();
     this.adminRestriction = settings.getAdminRestriction();
+    this.deliveryWorkers = settings.getDeliveryWorkers();
+    this.deliveryQueueSize = settings.getDeliveryQueueSize();
+    this.deliveryOverflow = settings.getDeliveryOverflow();
+    this.deliveryConnectionsPerHost = settings.getDeliveryConnectionsPerHost();
+    this.deliveryConnectionsTotal = settings.getDeliveryConnectionsTotal();
+    this.deliveryHistorySize = settings.getDeliveryHistorySize();
   }
 
   public PrnfbSettingsData build() {
@@ -33,6 +45,30 @@ public class PrnfbSettingsDataBuilder {
     return this.adminRestriction;
   }
 
+  public Integer getDeliveryConnectionsPerHost() {
+    return this.deliveryConnectionsPerHost;
+  }
+
+  public Integer getDeliveryConnectionsTotal() {
+    return this.deliveryConnectionsTotal;
+  }
+
+  public Integer getDeliveryHistorySize() {
+    return this.deliveryHistorySize;
+  }
+
+  public DELIVERY_OVERFLOW getDeliveryOverflow() {
+    return this.deliveryOverflow;
+  }
+
+  public Integer getDeliveryQueueSize() {
+    return this.deliveryQueueSize;
+  }
+
+  public Integer getDeliveryWorkers() {
+    return this.deliveryWorkers;
+  }
+
   public String getKeyStore() {
     return this.keyStore;
   }
@@ -50,6 +86,37 @@ public class PrnfbSettingsDataBuilder {
     return this;
   }
 
+  public PrnfbSettingsDataBuilder setDeliveryConnectionsPerHost(
+      Integer deliveryConnectionsPerHost) {
+    this.deliveryConnectionsPerHost = deliveryConnectionsPerHost;
+    return this;
+  }
+
+  public PrnfbSettingsDataBuilder setDeliveryConnectionsTotal(Integer deliveryConnectionsTotal) {
+    this.deliveryConnectionsTotal = deliveryConnectionsTotal;
+    return this;
+  }
+
+  public PrnfbSettingsDataBuilder setDeliveryHistorySize(Integer deliveryHistorySize) {
+    this.deliveryHistorySize = deliveryHistorySize;
+    return this;
+  }
+
+  public PrnfbSettingsDataBuilder setDeliveryOverflow(DELIVERY_OVERFLOW deliveryOverflow) {
+    this.deliveryOverflow = deliveryOverflow;
+    return this;
+  }
+
+  public PrnfbSettingsDataBuilder setDeliveryQueueSize(Integer deliveryQueueSize) {
+    this.deliveryQueueSize = deliveryQueueSize;
+    return this;
+  }
+
+  public PrnfbSettingsDataBuilder setDeliveryWorkers(Integer deliveryWorkers) {
+    this.deliveryWorkers = deliveryWorkers;
+    return this;
+  }
+
   public PrnfbSettingsDataBuilder setKeyStore(String keyStore) {
     this.keyStore = keyStore;
     return this;
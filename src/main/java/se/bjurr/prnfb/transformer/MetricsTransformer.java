@@ -0,0 +1,73 @@
+package se.bjurr.prnfb.transformer;
+
+import static com.google.common.collect.Maps.newTreeMap;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.http.pool.PoolStats;
+import se.bjurr.prnfb.http.DeliveryCounters;
+import se.bjurr.prnfb.http.DeliveryMetrics;
+import se.bjurr.prnfb.http.LatencyHistogram;
+import se.bjurr.prnfb.presentation.dto.ConnectionPoolDTO;
+import se.bjurr.prnfb.presentation.dto.DeliveryCountersDTO;
+import se.bjurr.prnfb.presentation.dto.DeliveryMetricsDTO;
+import se.bjurr.prnfb.presentation.dto.LatencyDTO;
+
+public class MetricsTransformer {
+
+  public static DeliveryMetricsDTO toDto(DeliveryMetrics metrics) {
+    DeliveryMetricsDTO dto = new DeliveryMetricsDTO();
+    dto.setQueued(metrics.getQueued());
+    dto.setHosts(toDtos(metrics.getHosts()));
+    dto.setConnections(toConnectionDtos(metrics.getConnections()));
+    dto.setNotifications(toDtos(metrics.getNotifications()));
+    dto.setRenderTime(toDto(metrics.getRenderTime()));
+    dto.setQueueWait(toDto(metrics.getQueueWait()));
+    dto.setConnectTime(toDto(metrics.getConnectTime()));
+    dto.setResponseTime(toDto(metrics.getResponseTime()));
+    return dto;
+  }
+
+  private static Map<String, DeliveryCountersDTO> toDtos(Map<String, DeliveryCounters> counters) {
+    Map<String, DeliveryCountersDTO> dtos = newTreeMap();
+    for (Entry<String, DeliveryCounters> entry : counters.entrySet()) {
+      dtos.put(entry.getKey(), toDto(entry.getValue()));
+    }
+    return dtos;
+  }
+
+  private static Map<String, ConnectionPoolDTO> toConnectionDtos(Map<String, PoolStats> pools) {
+    Map<String, ConnectionPoolDTO> dtos = newTreeMap();
+    for (Entry<String, PoolStats> entry : pools.entrySet()) {
+      ConnectionPoolDTO dto = new ConnectionPoolDTO();
+      dto.setLeased(entry.getValue().getLeased());
+      dto.setPending(entry.getValue().getPending());
+      dto.setAvailable(entry.getValue().getAvailable());
+      dto.setMax(entry.getValue().getMax());
+      dtos.put(entry.getKey(), dto);
+    }
+    return dtos;
+  }
+
+  private static DeliveryCountersDTO toDto(DeliveryCounters counters) {
+    DeliveryCountersDTO dto = new DeliveryCountersDTO();
+    dto.setName(counters.getName());
+    dto.setDelivered(counters.getDelivered());
+    dto.setFailed(counters.getFailed());
+    dto.setErrors(counters.getErrors());
+    dto.setRejected(counters.getRejected());
+    dto.setInFlight(counters.getInFlight());
+    return dto;
+  }
+
+  private static LatencyDTO toDto(LatencyHistogram histogram) {
+    LatencyDTO dto = new LatencyDTO();
+    dto.setCount(histogram.getCount());
+    dto.setMeanMillis(histogram.getMeanMillis());
+    dto.setMaxMillis(histogram.getMaxMillis());
+    dto.setP50Millis(histogram.getP50Millis());
+    dto.setP90Millis(histogram.getP90Millis());
+    dto.setP99Millis(histogram.getP99Millis());
+    return dto;
+  }
+}
@@ -45,6 +45,9 @@ public class NotificationTransformer {
     to.setPassword(UNCHANGED);
     to.setUuid(from.getUuid());
     to.setHttpVersion(from.getHttpVersion());
+    to.setDebounceSeconds(from.getDebounceSeconds());
+    to.setRetryBackoffSeconds(from.getRetryBackoffSeconds());
+    to.setRetryMaxAttempts(from.getRetryMaxAttempts());
     return to;
   }
 
@@ -89,6 +92,9 @@ public class NotificationTransformer {
         .withRepositorySlug(from.getRepositorySlug().orNull()) //
         .withProjectKey(from.getProjectKey().orNull()) //
         .withHttpVersion(from.getHttpVersion())
+        .withDebounceSeconds(from.getDebounceSeconds())
+        .withRetryBackoffSeconds(from.getRetryBackoffSeconds())
+        .withRetryMaxAttempts(from.getRetryMaxAttempts())
         .build();
   }
 
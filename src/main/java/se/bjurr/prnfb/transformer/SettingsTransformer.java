@@ -11,6 +11,12 @@ public class SettingsTransformer {
   public static SettingsDataDTO toDto(PrnfbSettingsData settingsData) {
     SettingsDataDTO dto = new SettingsDataDTO();
     dto.setAdminRestriction(settingsData.getAdminRestriction());
+    dto.setDeliveryConnectionsPerHost(settingsData.getDeliveryConnectionsPerHost());
+    dto.setDeliveryConnectionsTotal(settingsData.getDeliveryConnectionsTotal());
+    dto.setDeliveryHistorySize(settingsData.getDeliveryHistorySize());
+    dto.setDeliveryOverflow(settingsData.getDeliveryOverflow());
+    dto.setDeliveryQueueSize(settingsData.getDeliveryQueueSize());
+    dto.setDeliveryWorkers(settingsData.getDeliveryWorkers());
     dto.setKeyStore(settingsData.getKeyStore().orNull());
     dto.setKeyStorePassword(UNCHANGED);
     dto.setKeyStoreType(settingsData.getKeyStoreType());
@@ -21,6 +27,12 @@ public class SettingsTransformer {
   public static PrnfbSettingsData toPrnfbSettingsData(SettingsDataDTO settingsDataDto) {
     return prnfbSettingsDataBuilder() //
         .setAdminRestriction(settingsDataDto.getAdminRestriction()) //
+        .setDeliveryConnectionsPerHost(settingsDataDto.getDeliveryConnectionsPerHost()) //
+        .setDeliveryConnectionsTotal(settingsDataDto.getDeliveryConnectionsTotal()) //
+        .setDeliveryHistorySize(settingsDataDto.getDeliveryHistorySize()) //
+        .setDeliveryOverflow(settingsDataDto.getDeliveryOverflow()) //
+        .setDeliveryQueueSize(settingsDataDto.getDeliveryQueueSize()) //
+        .setDeliveryWorkers(settingsDataDto.getDeliveryWorkers()) //
         .setKeyStore(settingsDataDto.getKeyStore()) //
         .setKeyStorePassword(settingsDataDto.getKeyStorePassword()) //
         .setKeyStoreType(settingsDataDto.getKeyStoreType()) //
@@ -1,14 +1,67 @@
 package se.bjurr.prnfb.http;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static se.bjurr.prnfb.http.ClientKeyStore.clientKeyStore;
 import static se.bjurr.prnfb.settings.PrnfbSettingsBuilder.prnfbSettingsBuilder;
 import static se.bjurr.prnfb.settings.PrnfbSettingsDataBuilder.prnfbSettingsDataBuilder;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import se.bjurr.prnfb.settings.PrnfbSettings;
+import se.bjurr.prnfb.settings.PrnfbSettingsData;
 
 public class ClientKeyStoreTest {
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File createKeyStore(String password) throws Exception {
+    File file = temporaryFolder.newFile();
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    try (OutputStream out = new FileOutputStream(file)) {
+      keyStore.store(out, password.toCharArray());
+    }
+    return file;
+  }
+
+  @Test
+  public void testThatKeyStoreIsOnlyLoadedAgainWhenChanged() throws Exception {
+    File file = createKeyStore("pass");
+    PrnfbSettingsData settings =
+        prnfbSettingsDataBuilder() //
+            .setKeyStore(file.getAbsolutePath()) //
+            .setKeyStorePassword("pass") //
+            .build();
+
+    ClientKeyStore first = clientKeyStore(settings);
+
+    assertThat(first.getKeyStore().isPresent()) //
+        .isTrue();
+    assertThat(clientKeyStore(settings)) //
+        .isSameAs(first);
+
+    File other = createKeyStore("pass");
+    PrnfbSettingsData otherSettings =
+        prnfbSettingsDataBuilder() //
+            .setKeyStore(other.getAbsolutePath()) //
+            .setKeyStorePassword("pass") //
+            .build();
+    assertThat(clientKeyStore(otherSettings)) //
+        .isNotSameAs(first);
+
+    ClientKeyStore second = clientKeyStore(settings);
+    assertThat(second) //
+        .isNotSameAs(first);
+    file.setLastModified(file.lastModified() - 10000);
+    assertThat(clientKeyStore(settings)) //
+        .isNotSameAs(second);
+  }
+
   @Test(expected = RuntimeException.class)
   public void testThatExceptionIsThrownIfKeyStoreNotFound() {
     PrnfbSettings settings =
@@ -0,0 +1,58 @@
+package se.bjurr.prnfb.http;
+
+import static java.util.Arrays.copyOfRange;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import org.apache.http.HttpHost;
+import org.junit.Test;
+
+public class DeliveryRecordTest {
+
+  /** Belongs to the first week of 2025, so a week based year would show 2025. */
+  private static final long START =
+      ZonedDateTime.parse("2024-12-30T12:00:00.123Z").toInstant().toEpochMilli();
+
+  private static final URI HOST = URI.create("http://host/");
+
+  @Test
+  public void testThatInFlightIsShown() {
+    final String[] row = new DeliveryRecord(START, "POST", 12, HOST, null).toRow();
+
+    assertThat(row[0]) //
+        .startsWith("2024-12-30T");
+    assertThat(copyOfRange(row, 1, row.length)) //
+        .containsExactly("-", "-", "POST", "12", "http://host/", "-", "-", "-");
+  }
+
+  @Test
+  public void testThatResponseIsShown() {
+    final DeliveryRecord inFlight = new DeliveryRecord(START, "GET", -1, HOST, null);
+
+    final String[] row = inFlight.responded(42, 200, 3).toRow();
+    assertThat(copyOfRange(row, 1, row.length)) //
+        .containsExactly("42ms", "200", "GET", "-1", "http://host/", "3", "-", "-");
+    assertThat(inFlight.getStatus()) //
+        .isEqualTo(-1);
+  }
+
+  @Test
+  public void testThatErrorIsShownWithProxy() {
+    final DeliveryRecord inFlight =
+        new DeliveryRecord(START, "GET", -1, HOST, new HttpHost("proxy", 8080));
+
+    final String[] row = inFlight.failed(7, new IOException("refused")).toRow();
+    assertThat(copyOfRange(row, 1, row.length)) //
+        .containsExactly(
+            "7ms",
+            "ERR",
+            "GET",
+            "-1",
+            "http://host/",
+            "-",
+            "PROXY: http://proxy:8080",
+            "java.io.IOException: refused");
+  }
+}
@@ -0,0 +1,67 @@
+package se.bjurr.prnfb.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class DeliveryRecorderTest {
+
+  private final DeliveryRecorder<String> sut = new DeliveryRecorder<>(3);
+
+  @Test
+  public void testThatOnlyTheLatestAreKept() {
+    assertThat(sut.getLatest()) //
+        .isEmpty();
+
+    sut.record("a");
+    sut.record("b");
+    assertThat(sut.getLatest()) //
+        .containsExactly("a", "b");
+
+    sut.record("c");
+    sut.record("d");
+    assertThat(sut.getLatest()) //
+        .containsExactly("b", "c", "d");
+  }
+
+  @Test
+  public void testThatTheLatestAreKeptWhenResized() {
+    sut.record("a");
+    sut.record("b");
+    sut.record("c");
+
+    sut.setCapacity(2);
+    assertThat(sut.getLatest()) //
+        .containsExactly("b", "c");
+
+    sut.setCapacity(4);
+    sut.record("d");
+    sut.record("e");
+    assertThat(sut.getLatest()) //
+        .containsExactly("b", "c", "d", "e");
+  }
+
+  @Test
+  public void testThatConcurrentRecordsAreNotLost() throws InterruptedException {
+    final DeliveryRecorder<Integer> recorder = new DeliveryRecorder<>(10000);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int thread = 0; thread < 4; thread++) {
+      final int first = thread * 1000;
+      executor.execute(
+          () -> {
+            for (int i = first; i < first + 1000; i++) {
+              recorder.record(i);
+            }
+          });
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    assertThat(recorder.getLatest()) //
+        .hasSize(4000) //
+        .doesNotHaveDuplicates();
+  }
+}
@@ -0,0 +1,245 @@
+package se.bjurr.prnfb.http;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static se.bjurr.prnfb.http.DeliveryScheduler.UNKNOWN_DESTINATION;
+import static se.bjurr.prnfb.http.DeliveryScheduler.deliveryScheduler;
+import static se.bjurr.prnfb.http.DeliveryScheduler.destinationOf;
+import static se.bjurr.prnfb.settings.DELIVERY_OVERFLOW.COALESCE;
+import static se.bjurr.prnfb.settings.DELIVERY_OVERFLOW.DROP_OLDEST;
+import static se.bjurr.prnfb.settings.DELIVERY_OVERFLOW.REJECT;
+import static se.bjurr.prnfb.settings.PrnfbSettingsDataBuilder.prnfbSettingsDataBuilder;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Before;
+import org.junit.Test;
+import se.bjurr.prnfb.listener.FakeExecutorService;
+import se.bjurr.prnfb.service.SettingsService;
+import se.bjurr.prnfb.settings.DELIVERY_OVERFLOW;
+import se.bjurr.prnfb.settings.PrnfbSettingsData;
+
+public class DeliverySchedulerTest {
+
+  private final List<Runnable> scheduled = newArrayList();
+  private final List<String> delivered = newArrayList();
+  private final SettingsService settingsService = mock(SettingsService.class);
+  private DeliveryScheduler sut;
+
+  @Before
+  public void before() {
+    sut =
+        deliveryScheduler(
+            settingsService,
+            new FakeExecutorService() {
+              @Override
+              public void execute(Runnable command) {
+                scheduled.add(command);
+              }
+            });
+  }
+
+  private void configure(int workers, int queueSize, DELIVERY_OVERFLOW overflow) {
+    configure(workers, 1, queueSize, overflow);
+  }
+
+  private void configure(
+      int workers, int connectionsPerHost, int queueSize, DELIVERY_OVERFLOW overflow) {
+    when(settingsService.getPrnfbSettingsData()) //
+        .thenReturn(
+            prnfbSettingsDataBuilder() //
+                .setDeliveryWorkers(workers) //
+                .setDeliveryConnectionsPerHost(connectionsPerHost) //
+                .setDeliveryQueueSize(queueSize) //
+                .setDeliveryOverflow(overflow) //
+                .build());
+  }
+
+  private CompletableFuture<String> submit(String destination, Object key, String name) {
+    return sut.submit(
+        destination,
+        key,
+        () -> {
+          delivered.add(name);
+          return name;
+        });
+  }
+
+  private void runAll() {
+    while (!scheduled.isEmpty()) {
+      scheduled.remove(0).run();
+    }
+  }
+
+  private Throwable failureOf(CompletableFuture<?> future) throws InterruptedException {
+    try {
+      future.get();
+      return null;
+    } catch (final ExecutionException e) {
+      return e.getCause();
+    } catch (final CancellationException e) {
+      return e;
+    }
+  }
+
+  @Test
+  public void testThatDestinationIsHostAndPort() {
+    assertThat(destinationOf("http://host.com/path?a=b")) //
+        .isEqualTo("host.com");
+    assertThat(destinationOf("https://host.com:8443/path")) //
+        .isEqualTo("host.com:8443");
+    assertThat(destinationOf("not a url")) //
+        .isEqualTo(UNKNOWN_DESTINATION);
+  }
+
+  @Test
+  public void testThatAllDeliveriesAreRunInOrder() throws Exception {
+    configure(2, 10, REJECT);
+
+    CompletableFuture<String> first = submit("a", null, "a1");
+    CompletableFuture<String> second = submit("a", null, "a2");
+    assertThat(sut.getQueued()).containsEntry("a", 2);
+    runAll();
+
+    assertThat(delivered).containsExactly("a1", "a2");
+    assertThat(first.get()).isEqualTo("a1");
+    assertThat(second.get()).isEqualTo("a2");
+    assertThat(sut.getQueued()).isEmpty();
+  }
+
+  @Test
+  public void testThatAHostOnlyUsesAQuarterOfTheWorkers() {
+    configure(8, 10, REJECT);
+
+    submit("a", null, "a1");
+    submit("a", null, "a2");
+    submit("a", null, "a3");
+    assertThat(scheduled).hasSize(2);
+
+    submit("b", null, "b1");
+    assertThat(scheduled).hasSize(3);
+  }
+
+  @Test
+  public void testThatAHostUsesAllOfItsConnections() {
+    configure(16, 5, 10, REJECT);
+
+    for (int i = 0; i < 6; i++) {
+      submit("a", null, "a" + i);
+    }
+    assertThat(scheduled).hasSize(5);
+  }
+
+  @Test
+  public void testThatTwoBlockedHostsLeaveWorkersForOtherHosts() {
+    configure(8, 10, REJECT);
+
+    // Nothing scheduled is run, as if all deliveries to a and b hang
+    for (int i = 0; i < 5; i++) {
+      submit("a", null, "a" + i);
+      submit("b", null, "b" + i);
+    }
+    assertThat(scheduled).hasSize(4);
+
+    submit("c", null, "c1");
+    submit("d", null, "d1");
+    assertThat(scheduled).hasSize(6);
+  }
+
+  @Test
+  public void testThatEveryHostGetsAWorker() {
+    assertThat(DeliveryScheduler.maxRunningPerHost(1, 0)) //
+        .isEqualTo(1);
+    assertThat(DeliveryScheduler.maxRunningPerHost(8, 1)) //
+        .isEqualTo(2);
+    assertThat(DeliveryScheduler.maxRunningPerHost(8, 20)) //
+        .isEqualTo(8);
+  }
+
+  @Test
+  public void testThatAHostCanUseMoreThanItsConnectionsByDefault() {
+    final int workers = PrnfbSettingsData.DEFAULT_DELIVERY_WORKERS;
+    final int connectionsPerHost = PrnfbSettingsData.DEFAULT_DELIVERY_CONNECTIONS_PER_HOST;
+
+    assertThat(DeliveryScheduler.maxRunningPerHost(workers, connectionsPerHost)) //
+        .isGreaterThan(connectionsPerHost);
+  }
+
+  @Test
+  public void testThatHostsTakeTurns() {
+    configure(2, 10, REJECT);
+
+    submit("a", null, "a1");
+    submit("a", null, "a2");
+    submit("b", null, "b1");
+    runAll();
+
+    assertThat(delivered).containsExactly("a1", "b1", "a2");
+  }
+
+  @Test
+  public void testThatNewDeliveryIsRejectedWhenQueueIsFull() throws Exception {
+    configure(2, 1, REJECT);
+
+    CompletableFuture<String> first = submit("a", null, "a1");
+    CompletableFuture<String> second = submit("a", null, "a2");
+    CompletableFuture<String> other = submit("b", null, "b1");
+    runAll();
+
+    assertThat(first.get()).isEqualTo("a1");
+    assertThat(failureOf(second)).isInstanceOf(RejectedExecutionException.class);
+    assertThat(other.get()).isEqualTo("b1");
+  }
+
+  @Test
+  public void testThatOldestDeliveryIsDroppedWhenQueueIsFull() throws Exception {
+    configure(2, 1, DROP_OLDEST);
+
+    CompletableFuture<String> first = submit("a", null, "a1");
+    CompletableFuture<String> second = submit("a", null, "a2");
+    runAll();
+
+    assertThat(failureOf(first)).isInstanceOf(CancellationException.class);
+    assertThat(second.get()).isEqualTo("a2");
+    assertThat(delivered).containsExactly("a2");
+  }
+
+  @Test
+  public void testThatQueuedDeliveryIsReplacedWhenQueueIsFull() throws Exception {
+    configure(2, 2, COALESCE);
+
+    CompletableFuture<String> first = submit("a", "pr1", "a1");
+    submit("a", "pr2", "a2");
+    CompletableFuture<String> replacing = submit("a", "pr1", "a3");
+    CompletableFuture<String> rejected = submit("a", "pr3", "a4");
+    runAll();
+
+    assertThat(delivered).containsExactly("a3", "a2");
+    assertThat(failureOf(first)).isInstanceOf(CancellationException.class);
+    assertThat(replacing.get()).isEqualTo("a3");
+    assertThat(failureOf(rejected)).isInstanceOf(RejectedExecutionException.class);
+  }
+
+  @Test
+  public void testThatFailingDeliveryCompletesExceptionally() throws Exception {
+    configure(2, 10, REJECT);
+
+    CompletableFuture<String> failing =
+        sut.submit(
+            "a",
+            null,
+            () -> {
+              throw new IllegalStateException("down");
+            });
+    CompletableFuture<String> next = submit("a", null, "a2");
+    runAll();
+
+    assertThat(failureOf(failing)).isInstanceOf(IllegalStateException.class);
+    assertThat(next.get()).isEqualTo("a2");
+  }
+}
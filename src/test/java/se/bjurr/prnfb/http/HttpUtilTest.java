@@ -0,0 +1,175 @@
+package se.bjurr.prnfb.http;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static se.bjurr.prnfb.http.HttpUtil.QUIET_NANOS;
+import static se.bjurr.prnfb.http.HttpUtil.applyConnectionLimits;
+import static se.bjurr.prnfb.http.HttpUtil.connectionStats;
+import static se.bjurr.prnfb.http.HttpUtil.growBusyRoutes;
+import static se.bjurr.prnfb.http.HttpUtil.shrinkQuietRoutes;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Test;
+
+/** Connections are only leased from the pool, never connected. */
+public class HttpUtilTest {
+  private final PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+  private final List<HttpClientConnection> leased = newArrayList();
+
+  @After
+  public void after() {
+    release();
+    cm.shutdown();
+    HttpUtil.reset();
+  }
+
+  private HttpRoute route(String host) {
+    return new HttpRoute(new HttpHost(host, 80));
+  }
+
+  private void lease(HttpRoute route, int count) throws Exception {
+    for (int i = 0; i < count; i++) {
+      leased.add(cm.requestConnection(route, null).get(1, SECONDS));
+    }
+  }
+
+  private void release() {
+    for (HttpClientConnection connection : leased) {
+      cm.releaseConnection(connection, null, 0, MILLISECONDS);
+    }
+    leased.clear();
+  }
+
+  /** Starts a request that waits for a connection, it gets one when a connection is released. */
+  private Thread waitFor(HttpRoute route) throws InterruptedException {
+    Thread waiting =
+        new Thread(
+            () -> {
+              try {
+                HttpClientConnection connection =
+                    cm.requestConnection(route, null).get(10, SECONDS);
+                cm.releaseConnection(connection, null, 0, MILLISECONDS);
+              } catch (Exception e) {
+                // Timed out or shut down
+              }
+            });
+    waiting.setDaemon(true);
+    waiting.start();
+    while (cm.getStats(route).getPending() == 0) {
+      Thread.sleep(1);
+    }
+    return waiting;
+  }
+
+  @Test
+  public void testThatConnectionLimitsApplyToPool() {
+    applyConnectionLimits(cm, 3, 10);
+
+    assertThat(cm.getMaxTotal()) //
+        .isEqualTo(10);
+    assertThat(cm.getDefaultMaxPerRoute()) //
+        .isEqualTo(3);
+  }
+
+  @Test
+  public void testThatBusyRouteGrowsUpToHalfOfThePool() throws Exception {
+    HttpRoute route = route("busy");
+    applyConnectionLimits(cm, 2, 6);
+    lease(route, 2);
+    waitFor(route);
+
+    growBusyRoutes(cm, 2, 6, 0);
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(3);
+
+    lease(route, 1);
+    growBusyRoutes(cm, 2, 6, 0);
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(3);
+  }
+
+  @Test
+  public void testThatRouteWithoutWaitingRequestsDoesNotGrow() throws Exception {
+    HttpRoute route = route("idle");
+    applyConnectionLimits(cm, 2, 6);
+    lease(route, 2);
+
+    growBusyRoutes(cm, 2, 6, 0);
+
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(2);
+  }
+
+  @Test
+  public void testThatGrownRoutesAreShrunkWhenLimitsAreLowered() throws Exception {
+    HttpRoute route = route("grown");
+    lease(route, 1);
+    cm.setMaxPerRoute(route, 20);
+
+    applyConnectionLimits(cm, 2, 6);
+
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(3);
+  }
+
+  @Test
+  public void testThatRoutesGetRaisedConnectionsPerHost() throws Exception {
+    HttpRoute route = route("raised");
+    lease(route, 1);
+    cm.setMaxPerRoute(route, 2);
+
+    applyConnectionLimits(cm, 5, 20);
+
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(5);
+  }
+
+  @Test
+  public void testThatGrownRouteIsShrunkWhenQuiet() throws Exception {
+    HttpRoute route = route("quiet");
+    applyConnectionLimits(cm, 1, 4);
+    lease(route, 1);
+    Thread waiting = waitFor(route);
+    growBusyRoutes(cm, 1, 4, 0);
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(2);
+
+    shrinkQuietRoutes(cm, 1, 2 * QUIET_NANOS);
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(2);
+
+    release();
+    waiting.join();
+    shrinkQuietRoutes(cm, 1, 3 * QUIET_NANOS);
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(2);
+
+    shrinkQuietRoutes(cm, 1, 3 * QUIET_NANOS + 1);
+    assertThat(cm.getMaxPerRoute(route)) //
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void testThatConnectionStatsArePerRoute() throws Exception {
+    lease(route("a"), 2);
+    lease(route("b"), 1);
+
+    Map<String, PoolStats> stats = connectionStats(cm);
+
+    assertThat(stats) //
+        .containsOnlyKeys(route("a").toString(), route("b").toString());
+    assertThat(stats.get(route("a").toString()).getLeased()) //
+        .isEqualTo(2);
+    assertThat(stats.get(route("b").toString()).getLeased()) //
+        .isEqualTo(1);
+  }
+}
@@ -0,0 +1,59 @@
+package se.bjurr.prnfb.http;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static se.bjurr.prnfb.http.LatencyHistogram.bucketOf;
+import static se.bjurr.prnfb.http.LatencyHistogram.lowestOf;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  private final LatencyHistogram sut = new LatencyHistogram();
+
+  @Test
+  public void testThatBucketsCoverAllValues() {
+    for (long micros : new long[] {0, 1, 3, 4, 5, 7, 8, 9, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = bucketOf(micros);
+      assertThat(lowestOf(bucket)) //
+          .isLessThanOrEqualTo(micros);
+      if (micros < Long.MAX_VALUE) {
+        assertThat(lowestOf(bucket + 1)) //
+            .isGreaterThan(micros);
+      }
+    }
+  }
+
+  @Test
+  public void testThatEmptyHistogramIsZero() {
+    assertThat(sut.getCount()) //
+        .isEqualTo(0);
+    assertThat(sut.getMeanMillis()) //
+        .isEqualTo(0);
+    assertThat(sut.getP99Millis()) //
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void testThatPercentilesAreWithinTheBucketPrecision() {
+    for (int millis = 1; millis <= 100; millis++) {
+      sut.record(MILLISECONDS.toNanos(millis));
+    }
+    sut.record(MICROSECONDS.toNanos(-1));
+
+    assertThat(sut.getCount()) //
+        .isEqualTo(101);
+    assertThat(sut.getMaxMillis()) //
+        .isEqualTo(100);
+    assertThat(sut.getMeanMillis()) //
+        .isCloseTo(50, within(0.1));
+    assertThat(sut.getP50Millis()) //
+        .isBetween(50d, 50 * 1.25);
+    assertThat(sut.getP90Millis()) //
+        .isBetween(90d, 90 * 1.25);
+    assertThat(sut.getP99Millis()) //
+        .isBetween(99d, 100d);
+  }
+}
@@ -1,3 +1,27 @@
 package se.bjurr.prnfb.http;
 
-public class UrlInvokerTest {}
+import static org.apache.http.HttpVersion.HTTP_1_0;
+import static org.apache.http.HttpVersion.HTTP_1_1;
+import static org.assertj.core.api.Assertions.assertThat;
+import static se.bjurr.prnfb.http.UrlInvoker.urlInvoker;
+
+import org.junit.Test;
+
+public class UrlInvokerTest {
+
+  @Test
+  public void testThatHttp11IsUsedByDefault() {
+    assertThat(urlInvoker().getHttpVersion()) //
+        .isEqualTo(HTTP_1_1);
+    assertThat(urlInvoker().setHttpVersion(null).getHttpVersion()) //
+        .isEqualTo(HTTP_1_1);
+    assertThat(urlInvoker().setHttpVersion("HTTP_2").getHttpVersion()) //
+        .isEqualTo(HTTP_1_1);
+  }
+
+  @Test
+  public void testThatHttp10CanBeChosen() {
+    assertThat(urlInvoker().setHttpVersion("HTTP_1_0").getHttpVersion()) //
+        .isEqualTo(HTTP_1_0);
+  }
+}
@@ -7,8 +7,15 @@ import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anySet;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static se.bjurr.prnfb.http.DeliveryMetrics.deliveryMetrics;
+import static se.bjurr.prnfb.http.DeliveryScheduler.deliveryScheduler;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.APPROVED;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.RESCOPED_FROM;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestEventListener.setInvoker;
@@ -20,8 +27,10 @@ import static se.bjurr.prnfb.settings.TRIGGER_IF_MERGE.NOT_CONFLICTING;
 
 import com.atlassian.bitbucket.event.pull.PullRequestCommentAddedEvent;
 import com.atlassian.bitbucket.event.pull.PullRequestEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestRescopedEvent;
 import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestMergeability;
 import com.atlassian.bitbucket.pull.PullRequestRef;
 import com.atlassian.bitbucket.pull.PullRequestService;
 import com.atlassian.bitbucket.repository.Repository;
@@ -32,6 +41,7 @@ import com.atlassian.bitbucket.user.ApplicationUser;
 import com.atlassian.bitbucket.user.EscalatedSecurityContext;
 import com.atlassian.bitbucket.user.SecurityService;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
@@ -43,12 +53,15 @@ import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import se.bjurr.prnfb.http.ClientKeyStore;
+import se.bjurr.prnfb.http.DeliveryMetrics;
+import se.bjurr.prnfb.http.DeliveryScheduler;
 import se.bjurr.prnfb.http.HttpResponse;
 import se.bjurr.prnfb.http.Invoker;
 import se.bjurr.prnfb.http.UrlInvoker;
 import se.bjurr.prnfb.service.MockedEscalatedSecurityContext;
 import se.bjurr.prnfb.service.PrnfbRenderer;
 import se.bjurr.prnfb.service.PrnfbRendererFactory;
+import se.bjurr.prnfb.service.RetryService;
 import se.bjurr.prnfb.service.SettingsService;
 import se.bjurr.prnfb.service.VariablesContext;
 import se.bjurr.prnfb.settings.PrnfbNotification;
@@ -58,6 +71,7 @@ import se.bjurr.prnfb.settings.ValidationException;
 public class PrnfbPullRequestEventListenerTest {
 
   private final ClientKeyStore clientKeyStore = null;
+  private DeliveryMetrics deliveryMetrics;
   private final ExecutorService executorService = new FakeExecutorService();
   @Mock private PullRequestRef fromRef;
   private final List<UrlInvoker> invokedUrls = newArrayList();
@@ -71,6 +85,7 @@ public class PrnfbPullRequestEventListenerTest {
   @Mock private PullRequestEvent pullRequestRescopedEvent;
   @Mock private PullRequestService pullRequestService;
   @Mock private PrnfbRenderer renderer;
+  @Mock private RetryService retryService;
   @Mock private SettingsService settingsService;
   @Mock private ScmService scmService;
   @Mock private ScmPullRequestCommandFactory pullRequestCommandFactory;
@@ -101,6 +116,8 @@ public class PrnfbPullRequestEventListenerTest {
     EscalatedSecurityContext escalatedSecurityContext = new MockedEscalatedSecurityContext();
     when(securityService.withPermission(Mockito.any(), Mockito.any())) //
         .thenReturn(escalatedSecurityContext);
+    DeliveryScheduler deliveryScheduler = deliveryScheduler(settingsService, executorService);
+    deliveryMetrics = deliveryMetrics(deliveryScheduler);
     sut =
         new PrnfbPullRequestEventListener(
             prnfbRendererFactory,
@@ -108,7 +125,10 @@ public class PrnfbPullRequestEventListenerTest {
             executorService,
             settingsService,
             securityService,
-            scmService);
+            scmService,
+            deliveryScheduler,
+            retryService,
+            deliveryMetrics);
     setInvoker(
         new Invoker() {
           @Override
@@ -178,6 +198,18 @@ public class PrnfbPullRequestEventListenerTest {
         newArrayList(notification1, notification2, notification3);
     when(settingsService.getNotifications()) //
         .thenReturn(notifications);
+    when(settingsService.getNotificationCandidates(anySet(), anyString(), anyString())) //
+        .thenReturn(notifications);
+    Repository toRepository = mock(Repository.class);
+    Project toProject = mock(Project.class);
+    when(toRef.getRepository()) //
+        .thenReturn(toRepository);
+    when(toRepository.getProject()) //
+        .thenReturn(toProject);
+    when(toRepository.getSlug()) //
+        .thenReturn("repositorySlug");
+    when(toProject.getKey()) //
+        .thenReturn("projectKey");
 
     when(prnfbRendererFactory.create(
             any(PullRequest.class),
@@ -210,6 +242,56 @@ public class PrnfbPullRequestEventListenerTest {
         .isEmpty();
   }
 
+  @Test
+  public void testThatDebouncedEventsAreNotifiedOnceWithTheFirstPreviousHashes()
+      throws ValidationException {
+    PrnfbNotification notification =
+        prnfbNotificationBuilder() //
+            .withUrl("http://debounced.com/") //
+            .withTrigger(RESCOPED_FROM) //
+            .withDebounceSeconds(60) //
+            .build();
+    when(settingsService.getNotificationCandidates(anySet(), anyString(), anyString())) //
+        .thenReturn(newArrayList(notification));
+    when(settingsService.findNotification(notification.getUuid())) //
+        .thenReturn(Optional.of(notification));
+    when(pullRequestService.getById(anyInt(), anyLong())) //
+        .thenReturn(pullRequest);
+
+    sut.handleEventAsync(rescopedEvent("fromBeforeWindow", "latestCTo"));
+    sut.handleEventAsync(rescopedEvent("latestCFrom", "toInWindow"));
+
+    assertThat(invokedUrls) //
+        .isEmpty();
+    assertThat(sut.getDebouncer().getOpenWindows()) //
+        .isEqualTo(1);
+
+    sut.getDebouncer().fireAll();
+    sut.shutdown();
+
+    assertInvokedUrls("http://debounced.com/");
+    verify(prnfbRendererFactory) //
+        .create(
+            eq(pullRequest),
+            eq(RESCOPED_FROM),
+            eq(notification),
+            any(VariablesContext.class),
+            any(ApplicationUser.class));
+  }
+
+  private PullRequestRescopedEvent rescopedEvent(String previousFromHash, String previousToHash) {
+    PullRequestRescopedEvent event = mock(PullRequestRescopedEvent.class);
+    when(event.getPullRequest()) //
+        .thenReturn(pullRequest);
+    when(event.getAction()) //
+        .thenReturn(RESCOPED);
+    when(event.getPreviousFromHash()) //
+        .thenReturn(previousFromHash);
+    when(event.getPreviousToHash()) //
+        .thenReturn(previousToHash);
+    return event;
+  }
+
   @Test
   public void testThatHeaderCanContainVariables() {}
 
@@ -238,6 +320,50 @@ public class PrnfbPullRequestEventListenerTest {
         .isFalse();
   }
 
+  @Test
+  public void testThatMergeCheckIsOnlyMadeOncePerPullRequestVersion() throws ValidationException {
+    PrnfbNotification notification =
+        prnfbNotificationBuilder() //
+            .withTrigger(RESCOPED_FROM) //
+            .withUrl("http://hej.com") //
+            .withTriggerIfCanMerge(CONFLICTING) //
+            .build();
+    PullRequestMergeability mergeability = mock(PullRequestMergeability.class);
+    when(mergeability.isConflicted()) //
+        .thenReturn(true);
+    when(pullRequestService.canMerge(anyInt(), anyLong())) //
+        .thenReturn(mergeability);
+    when(pullRequest.isOpen()) //
+        .thenReturn(true);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(
+              sut.isNotificationTriggeredByAction(
+                  notification,
+                  RESCOPED_FROM,
+                  renderer,
+                  pullRequest,
+                  clientKeyStore,
+                  shouldAcceptAnyCertificate)) //
+          .isTrue();
+    }
+    verify(pullRequestService, times(1)) //
+        .canMerge(anyInt(), anyLong());
+
+    when(pullRequest.getVersion()) //
+        .thenReturn(1);
+    sut.isNotificationTriggeredByAction(
+        notification,
+        RESCOPED_FROM,
+        renderer,
+        pullRequest,
+        clientKeyStore,
+        shouldAcceptAnyCertificate);
+
+    verify(pullRequestService, times(2)) //
+        .canMerge(anyInt(), anyLong());
+  }
+
   @Test
   public void testThatNotifiationIsNotTriggeredByActionIfOnlyBuildingMergingAndItIsConflicting() {
     assertThat(sut.ignoreBecauseOfConflicting(ALWAYS, false)) //
@@ -504,4 +630,26 @@ public class PrnfbPullRequestEventListenerTest {
 
     assertInvokedUrls("http://not1.com/", "http://not2.com/");
   }
+
+  @Test
+  public void testThatDeliveriesAreCountedPerHostAndNotification() {
+
+    sut.handleEventAsync(pullRequestOpenedEvent);
+
+    assertThat(deliveryMetrics.getHosts().keySet()) //
+        .containsOnly("not1.com", "not2.com");
+    assertThat(deliveryMetrics.getHosts().get("not1.com").getDelivered()) //
+        .isEqualTo(1);
+    assertThat(deliveryMetrics.getHosts().get("not1.com").getInFlight()) //
+        .isEqualTo(0);
+    // The notifications are copies with the same UUID
+    assertThat(deliveryMetrics.getNotifications().keySet()) //
+        .containsOnly(notification1.getUuid().toString());
+    assertThat(deliveryMetrics.getNotifications().values().iterator().next().getDelivered()) //
+        .isEqualTo(2);
+    assertThat(deliveryMetrics.getRenderTime().getCount()) //
+        .isEqualTo(2);
+    assertThat(deliveryMetrics.getQueueWait().getCount()) //
+        .isEqualTo(2);
+  }
 }
@@ -2,8 +2,10 @@ package se.bjurr.prnfb.presentation;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -12,11 +14,19 @@ import static se.bjurr.prnfb.settings.USER_LEVEL.EVERYONE;
 import static se.bjurr.prnfb.test.Podam.populatedInstanceOf;
 import static se.bjurr.prnfb.transformer.ButtonTransformer.toPrnfbButton;
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -64,6 +74,7 @@ public class ButtonServletTest {
     when(this.userCheckService.isAdminAllowed(Mockito.any(), Mockito.any())) //
         .thenReturn(true);
     this.sut = new ButtonServlet(this.buttonsService, this.settingsService, this.userCheckService);
+    ButtonServlet.invalidatePullRequestButtons();
 
     this.buttonDto1 = populatedInstanceOf(ButtonDTO.class);
     this.buttonDto1.setButtonFormListString(null);
@@ -142,7 +153,7 @@ public class ButtonServletTest {
   }
 
   @Test
-  public void testThatButtonCanBeListed() {
+  public void testThatButtonCanBeListed() throws IOException {
     this.buttonDto1.setButtonFormListString(null);
     this.button1 = toPrnfbButton(this.buttonDto1);
     this.buttonDto2.setButtonFormListString(null);
@@ -152,9 +163,12 @@ public class ButtonServletTest {
         .thenReturn(newArrayList(this.button1, this.button2));
     allowAll();
 
-    final Response actual = this.sut.get();
-    @SuppressWarnings("unchecked")
-    final Iterable<ButtonDTO> actualList = (Iterable<ButtonDTO>) actual.getEntity();
+    final Response actual = this.sut.get(null, null);
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ((StreamingOutput) actual.getEntity()).write(output);
+    final List<ButtonDTO> actualList =
+        new Gson()
+            .fromJson(output.toString("UTF-8"), new TypeToken<List<ButtonDTO>>() {}.getType());
     final Iterator<ButtonDTO> itr = actualList.iterator();
     final ButtonDTO first = itr.next();
     first.setButtonFormListString(null);
@@ -308,6 +322,54 @@ public class ButtonServletTest {
   }
    */
 
+  @Test
+  public void testThatPullRequestButtonsAreEvaluatedAgainOnlyWhenKeyIsChanged() {
+    final Integer repositoryId = 2;
+    final Long pullRequestId = 3L;
+    final Request request = mock(Request.class);
+    when(this.buttonsService.getButtonsCacheKey(repositoryId, pullRequestId)) //
+        .thenReturn(newArrayList(repositoryId, pullRequestId, 1));
+    when(this.buttonsService.getButtons(repositoryId, pullRequestId)) //
+        .thenReturn(newArrayList(this.button1));
+    when(this.buttonsService.getRenderer(repositoryId, pullRequestId, this.button1.getUuid())) //
+        .thenReturn(rendererWrapper);
+
+    final Response first = this.sut.getPullRequestButtons(request, repositoryId, pullRequestId);
+    final Response second = this.sut.getPullRequestButtons(request, repositoryId, pullRequestId);
+
+    assertThat(second.getEntity()) //
+        .isEqualTo(first.getEntity());
+    assertThat(second.getMetadata().getFirst("ETag")) //
+        .isEqualTo(first.getMetadata().getFirst("ETag"));
+    verify(this.buttonsService, times(1)) //
+        .getButtons(repositoryId, pullRequestId);
+
+    when(this.buttonsService.getButtonsCacheKey(repositoryId, pullRequestId)) //
+        .thenReturn(newArrayList(repositoryId, pullRequestId, 2));
+    this.sut.getPullRequestButtons(request, repositoryId, pullRequestId);
+
+    verify(this.buttonsService, times(2)) //
+        .getButtons(repositoryId, pullRequestId);
+  }
+
+  @Test
+  public void testThatPullRequestButtonsAreNotModifiedWhenRevalidated() {
+    final Integer repositoryId = 2;
+    final Long pullRequestId = 3L;
+    final Request request = mock(Request.class);
+    when(this.buttonsService.getButtonsCacheKey(repositoryId, pullRequestId)) //
+        .thenReturn(newArrayList(repositoryId, pullRequestId, 1));
+    when(request.evaluatePreconditions(any(Date.class), any(EntityTag.class))) //
+        .thenReturn(Response.notModified());
+
+    final Response actual = this.sut.getPullRequestButtons(request, repositoryId, pullRequestId);
+
+    assertThat(actual.getStatus()) //
+        .isEqualTo(304);
+    assertThat(actual.getEntity()) //
+        .isNull();
+  }
+
   @Test
   public void testThatButtonCanBeUpdated() throws Exception {
     final PrnfbSettingsData prnfbSettingsData = mock(PrnfbSettingsData.class);
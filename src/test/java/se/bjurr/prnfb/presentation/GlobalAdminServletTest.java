@@ -15,13 +15,17 @@ import com.atlassian.templaterenderer.TemplateRenderer;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import se.bjurr.prnfb.http.DeliveryScheduler;
+import se.bjurr.prnfb.service.RetryService;
 import se.bjurr.prnfb.service.UserCheckService;
 
 public class GlobalAdminServletTest {
 
+  @Mock private DeliveryScheduler deliveryScheduler;
   @Mock private LoginUriProvider loginUriProvider;
   @Mock private TemplateRenderer renderer;
   @Mock private RepositoryService repositoryService;
+  @Mock private RetryService retryService;
   private GlobalAdminServlet sut;
   @Mock private UserCheckService userCheckService;
   @Mock private UserManager userManager;
@@ -37,7 +41,9 @@ public class GlobalAdminServletTest {
             this.renderer,
             this.repositoryService,
             this.userCheckService,
-            this.projectService);
+            this.projectService,
+            this.deliveryScheduler,
+            this.retryService);
   }
 
   @Test
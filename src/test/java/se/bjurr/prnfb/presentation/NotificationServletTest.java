@@ -15,8 +15,13 @@ import static se.bjurr.prnfb.test.Podam.populatedInstanceOf;
 import static se.bjurr.prnfb.transformer.NotificationTransformer.toPrnfbNotification;
 
 import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -100,13 +105,43 @@ public class NotificationServletTest {
     when(userCheckService.filterAdminAllowed(storedSettings)) //
         .thenReturn(storedSettings);
 
-    final List<NotificationDTO> actual = (List<NotificationDTO>) this.sut.get().getEntity();
+    final List<NotificationDTO> actual = streamed(this.sut.get(null, null));
     setUnchanged(notificationDto1);
     setUnchanged(notificationDto2);
     assertThat(actual) //
         .containsOnly(this.notificationDto1, this.notificationDto2);
   }
 
+  @Test
+  public void testThatNotificationsCanBeListedInPages() throws Exception {
+    this.notificationDto1.setName("a");
+    this.notificationDto2.setName("b");
+    this.notification1 = toPrnfbNotification(this.notificationDto1);
+    this.notification2 = toPrnfbNotification(this.notificationDto2);
+    final List<PrnfbNotification> storedSettings =
+        newArrayList(this.notification2, this.notification1);
+    when(this.settingsService.getNotifications()) //
+        .thenReturn(storedSettings);
+    when(userCheckService.filterAdminAllowed(storedSettings)) //
+        .thenReturn(storedSettings);
+    setUnchanged(notificationDto1);
+    setUnchanged(notificationDto2);
+
+    assertThat(streamed(this.sut.get(0, 1))) //
+        .containsExactly(this.notificationDto1);
+    assertThat(streamed(this.sut.get(1, 10))) //
+        .containsExactly(this.notificationDto2);
+    assertThat(streamed(this.sut.get(2, null))) //
+        .isEmpty();
+  }
+
+  private List<NotificationDTO> streamed(Response response) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(output);
+    return new Gson()
+        .fromJson(output.toString("UTF-8"), new TypeToken<List<NotificationDTO>>() {}.getType());
+  }
+
   private void setUnchanged(NotificationDTO dto) {
     dto.setUser(UNCHANGED);
     dto.setPassword(UNCHANGED);
@@ -122,9 +157,9 @@ public class NotificationServletTest {
     when(userCheckService.filterAdminAllowed(notifications)) //
         .thenReturn(notifications);
 
-    final Response actual = this.sut.get(this.notificationDto1.getProjectKey().orNull());
-    @SuppressWarnings("unchecked")
-    final Iterable<NotificationDTO> actualList = (Iterable<NotificationDTO>) actual.getEntity();
+    final Response actual =
+        this.sut.get(this.notificationDto1.getProjectKey().orNull(), null, null);
+    final Iterable<NotificationDTO> actualList = streamed(actual);
 
     setUnchanged(notificationDto1);
     assertThat(actualList) //
@@ -144,9 +179,10 @@ public class NotificationServletTest {
     final Response actual =
         this.sut.get(
             this.notificationDto1.getProjectKey().orNull(),
-            this.notificationDto1.getRepositorySlug().orNull());
-    @SuppressWarnings("unchecked")
-    final Iterable<NotificationDTO> actualList = (Iterable<NotificationDTO>) actual.getEntity();
+            this.notificationDto1.getRepositorySlug().orNull(),
+            null,
+            null);
+    final Iterable<NotificationDTO> actualList = streamed(actual);
 
     setUnchanged(notificationDto1);
 
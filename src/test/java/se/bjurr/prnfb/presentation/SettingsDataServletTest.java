@@ -6,6 +6,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static se.bjurr.prnfb.settings.DELIVERY_OVERFLOW.DROP_OLDEST;
 import static se.bjurr.prnfb.settings.PrnfbSettings.UNCHANGED;
 import static se.bjurr.prnfb.settings.PrnfbSettingsDataBuilder.prnfbSettingsDataBuilder;
 import static se.bjurr.prnfb.settings.USER_LEVEL.ADMIN;
@@ -39,6 +40,12 @@ public class SettingsDataServletTest {
   public void testThatSettingsCanBeRead() throws Exception {
     final SettingsDataDTO expected = new SettingsDataDTO();
     expected.setAdminRestriction(ADMIN);
+    expected.setDeliveryConnectionsPerHost(2);
+    expected.setDeliveryConnectionsTotal(20);
+    expected.setDeliveryHistorySize(100);
+    expected.setDeliveryOverflow(DROP_OLDEST);
+    expected.setDeliveryQueueSize(50);
+    expected.setDeliveryWorkers(4);
     expected.setKeyStore("keyStore");
     expected.setKeyStorePassword(UNCHANGED);
     expected.setKeyStoreType("keyStoreType");
@@ -48,6 +55,12 @@ public class SettingsDataServletTest {
         prnfbSettingsDataBuilder() //
             .setShouldAcceptAnyCertificate(true) //
             .setAdminRestriction(ADMIN) //
+            .setDeliveryConnectionsPerHost(2) //
+            .setDeliveryConnectionsTotal(20) //
+            .setDeliveryHistorySize(100) //
+            .setDeliveryOverflow(DROP_OLDEST) //
+            .setDeliveryQueueSize(50) //
+            .setDeliveryWorkers(4) //
             .setKeyStore("keyStore") //
             .setKeyStorePassword("keyStorePassword") //
             .setKeyStoreType("keyStoreType") //
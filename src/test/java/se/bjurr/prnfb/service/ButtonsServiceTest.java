@@ -4,17 +4,22 @@ import static com.atlassian.bitbucket.pull.PullRequestState.DECLINED;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.BUTTON_TRIGGER;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.MERGED;
+import static se.bjurr.prnfb.service.PrnfbVariable.BUTTON_TRIGGER_TITLE;
+import static se.bjurr.prnfb.service.PrnfbVariable.EVERYTHING_URL;
 import static se.bjurr.prnfb.test.Podam.populatedInstanceOf;
 import static se.bjurr.prnfb.transformer.ButtonTransformer.toPrnfbButton;
 import static se.bjurr.prnfb.transformer.NotificationTransformer.toPrnfbNotification;
 
 import com.atlassian.bitbucket.auth.AuthenticationContext;
+import com.atlassian.bitbucket.event.pull.PullRequestParticipantStatusUpdatedEvent;
 import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.pull.PullRequest;
 import com.atlassian.bitbucket.pull.PullRequestRef;
@@ -162,20 +167,22 @@ public class ButtonsServiceTest {
         .thenReturn(true);
 
     when(this.prnfbPullRequestEventListener.isNotificationTriggeredByAction(
-            this.notification1,
-            this.pullRequestAction,
-            this.renderer,
-            this.pullRequest,
-            this.clientKeyStore,
-            this.shouldAcceptAnyCertificate)) //
+            eq(this.notification1),
+            eq(this.pullRequestAction),
+            eq(this.renderer),
+            eq(this.pullRequest),
+            eq(this.clientKeyStore),
+            eq(this.shouldAcceptAnyCertificate),
+            any())) //
         .thenReturn(true);
     when(this.prnfbPullRequestEventListener.isNotificationTriggeredByAction(
-            this.notification2,
-            this.pullRequestAction,
-            this.renderer,
-            this.pullRequest,
-            this.clientKeyStore,
-            this.shouldAcceptAnyCertificate)) //
+            eq(this.notification2),
+            eq(this.pullRequestAction),
+            eq(this.renderer),
+            eq(this.pullRequest),
+            eq(this.clientKeyStore),
+            eq(this.shouldAcceptAnyCertificate),
+            any())) //
         .thenReturn(true);
 
     List<PrnfbButton> actual =
@@ -236,6 +243,74 @@ public class ButtonsServiceTest {
         .isEmpty();
   }
 
+  @Test
+  public void testThatNotificationsAreOnlyCheckedOnceForAllButtons() {
+    when(this.settingsService.getButtons()) //
+        .thenReturn(newArrayList(this.button1, this.button2));
+    when(this.userCheckService.isAllowed(any(), any(), any())) //
+        .thenReturn(true);
+    when(this.prnfbPullRequestEventListener.isNotificationTriggeredByAction(
+            eq(this.notification2), any(), any(), any(), any(), any(), any())) //
+        .thenReturn(true);
+
+    List<PrnfbButton> actual =
+        this.sut.doGetButtons(
+            this.notifications,
+            this.clientKeyStore,
+            this.pullRequest,
+            this.shouldAcceptAnyCertificate);
+
+    assertThat(actual) //
+        .containsOnly(this.button1, this.button2);
+    verify(this.prnfbPullRequestEventListener, times(1)) //
+        .isNotificationTriggeredByAction(
+            eq(this.notification1), any(), any(), any(), any(), any(), any());
+    verify(this.prnfbPullRequestEventListener, times(1)) //
+        .conflictsOf(this.pullRequest);
+  }
+
+  @Test
+  public void testThatNotificationsUsingTheButtonTitleAreFound() throws ValidationException {
+    this.notificationDto1.setFilterString("${" + BUTTON_TRIGGER_TITLE.name() + "}");
+    this.notification1 = toPrnfbNotification(this.notificationDto1);
+
+    assertThat(ButtonsService.isUsingButton(this.notification1)) //
+        .isTrue();
+    assertThat(ButtonsService.isUsingButton(this.notification2)) //
+        .isFalse();
+  }
+
+  @Test
+  public void testThatCacheKeyChangesWhenParticipantStatusChanges() {
+    when(this.pullRequestService.getById(1, 2L)) //
+        .thenReturn(this.pullRequest);
+    when(this.repository.getId()) //
+        .thenReturn(1);
+    when(this.pullRequest.getId()) //
+        .thenReturn(2L);
+    final List<Object> before = this.sut.getButtonsCacheKey(1, 2L);
+    assertThat(this.sut.getButtonsCacheKey(1, 2L)) //
+        .isEqualTo(before);
+
+    final PullRequestParticipantStatusUpdatedEvent approved =
+        mock(PullRequestParticipantStatusUpdatedEvent.class);
+    when(approved.getPullRequest()) //
+        .thenReturn(this.pullRequest);
+    this.sut.onEvent(approved);
+
+    assertThat(this.sut.getButtonsCacheKey(1, 2L)) //
+        .isNotEqualTo(before);
+  }
+
+  @Test
+  public void testThatNotificationsUsingEverythingUrlAreFound() throws ValidationException {
+    this.notificationDto1.setFilterString("${" + EVERYTHING_URL.name() + "}");
+    this.notification1 = toPrnfbNotification(this.notificationDto1);
+
+    assertThat(ButtonsService.isUsingButton(this.notification1)) //
+        .isTrue();
+  }
+
   @Test
   public void testThatPressedButtonDoesNotDoAnythingIfNoMatchingNotification() {
     UUID buttonUuid = this.button1.getUuid();
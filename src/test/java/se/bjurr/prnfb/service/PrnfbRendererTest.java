@@ -2,6 +2,8 @@ package se.bjurr.prnfb.service;
 
 import static com.google.common.collect.Maps.newHashMap;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.APPROVED;
@@ -95,21 +97,7 @@ public class PrnfbRendererTest {
   @Test
   public void testThatEverythingCanBeRendered() throws UnsupportedEncodingException {
     final String actual =
-        sut.getRenderedStringResolved(
-            "asd ${" + EVERYTHING_URL.name() + "} asd",
-            encodeFor,
-            sut.regexp(EVERYTHING_URL),
-            EVERYTHING_URL.resolve(
-                pullRequest,
-                pullRequestAction,
-                applicationUser,
-                repositoryService,
-                propertiesService,
-                prnfbNotification,
-                variables,
-                clientKeyStore,
-                shouldAcceptAnyCertificate,
-                securityService));
+        PrnfbTemplate.expandEverythingUrl("asd ${" + EVERYTHING_URL.name() + "} asd");
 
     for (final PrnfbVariable v : PrnfbVariable.values()) {
       if (v != EVERYTHING_URL && v != PULL_REQUEST_DESCRIPTION) {
@@ -126,18 +114,48 @@ public class PrnfbRendererTest {
 
   @Test
   public void testThatDollarInStringCanBeRendered() throws UnsupportedEncodingException {
+    when(pullRequest.getTitle()) //
+        .thenReturn(
+            "BNRSD-387 Fix circular reference logging on $host errors in RSD abstract client");
+
     final String actual =
-        sut.getRenderedStringResolved(
+        sut.render(
             "asd ${" + PULL_REQUEST_TITLE.name() + "} asd",
             encodeFor,
-            sut.regexp(PULL_REQUEST_TITLE),
-            "BNRSD-387 Fix circular reference logging on $host errors in RSD abstract client");
+            clientKeyStore,
+            shouldAcceptAnyCertificate);
 
     assertThat(actual) //
         .isEqualTo(
             "asd BNRSD-387 Fix circular reference logging on $host errors in RSD abstract client asd");
   }
 
+  @Test
+  public void testThatTemplateIsCompiledOnce() {
+    final String template = "a ${PULL_REQUEST_ID} b ${UNKNOWN} ${PULL_REQUEST_ID}${ c";
+
+    assertThat(PrnfbTemplate.compile(template)) //
+        .isSameAs(PrnfbTemplate.compile(template));
+    assertThat(PrnfbTemplate.compile(template).getVariables()) //
+        .containsExactly(PULL_REQUEST_ID, PULL_REQUEST_ID);
+  }
+
+  @Test
+  public void testThatUnknownVariablesAreLeftAsIs() {
+    when(pullRequest.getId()) //
+        .thenReturn(123L);
+
+    final String actual =
+        sut.render(
+            "a ${PULL_REQUEST_ID} b ${UNKNOWN} ${${PULL_REQUEST_ID}}${ c",
+            encodeFor,
+            clientKeyStore,
+            shouldAcceptAnyCertificate);
+
+    assertThat(actual) //
+        .isEqualTo("a 123 b ${UNKNOWN} ${123}${ c");
+  }
+
   @Test
   public void testThatIfAVariableChrashesOnResolveItWillBeEmpty() {
     final String actual =
@@ -168,6 +186,35 @@ public class PrnfbRendererTest {
         .isEqualTo("my  string");
   }
 
+  @Test
+  public void testThatVariablesAreResolvedOnceForRenderersSharingCache() {
+    when(pullRequest.getTitle()) //
+        .thenReturn("the title");
+    final PrnfbVariableCache variableCache = new PrnfbVariableCache();
+    for (int i = 0; i < 3; i++) {
+      final PrnfbRenderer renderer =
+          new PrnfbRenderer(
+              pullRequest,
+              pullRequestAction,
+              applicationUser,
+              repositoryService,
+              propertiesService,
+              prnfbNotification,
+              variables,
+              variableCache,
+              securityService);
+      assertThat(
+              renderer.render(
+                  "${" + PULL_REQUEST_TITLE + "}",
+                  encodeFor,
+                  clientKeyStore,
+                  shouldAcceptAnyCertificate)) //
+          .isEqualTo("the title");
+    }
+
+    verify(pullRequest, times(1)).getTitle();
+  }
+
   @Test
   public void testThatInjectionUrlCanBeRendered() throws ValidationException {
     prnfbNotification =
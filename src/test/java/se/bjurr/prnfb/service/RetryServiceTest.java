@@ -0,0 +1,286 @@
+package se.bjurr.prnfb.service;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+import static com.google.common.collect.Lists.newArrayList;
+import static javax.ws.rs.core.HttpHeaders.AUTHORIZATION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static se.bjurr.prnfb.http.DeliveryScheduler.deliveryScheduler;
+import static se.bjurr.prnfb.http.UrlInvoker.urlInvoker;
+import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.OPENED;
+import static se.bjurr.prnfb.service.RetryService.MAX_BACKOFF_MILLIS;
+import static se.bjurr.prnfb.service.RetryService.RETRIES_STORAGE_KEY;
+import static se.bjurr.prnfb.service.RetryService.backoffMillis;
+import static se.bjurr.prnfb.service.RetryService.retryService;
+import static se.bjurr.prnfb.service.RetryService.retryStorageKey;
+import static se.bjurr.prnfb.settings.PrnfbNotificationBuilder.prnfbNotificationBuilder;
+import static se.bjurr.prnfb.settings.PrnfbSettingsDataBuilder.prnfbSettingsDataBuilder;
+
+import com.atlassian.beehive.ClusterLock;
+import com.atlassian.beehive.ClusterLockService;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+import java.net.URI;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import se.bjurr.prnfb.http.DeliveryScheduler;
+import se.bjurr.prnfb.http.HttpResponse;
+import se.bjurr.prnfb.http.Invoker;
+import se.bjurr.prnfb.http.UrlInvoker;
+import se.bjurr.prnfb.listener.FakeExecutorService;
+import se.bjurr.prnfb.settings.PrnfbNotification;
+import se.bjurr.prnfb.settings.ValidationException;
+
+public class RetryServiceTest {
+  private final ClusterLock clusterLock = mock(ClusterLock.class);
+  private DeliveryScheduler deliveryScheduler;
+  private final List<UrlInvoker> invoked = newArrayList();
+  private PrnfbNotification notification;
+  private final PluginSettingsMap pluginSettings = new PluginSettingsMap();
+  private int responseStatus;
+  private final SettingsService settingsService = mock(SettingsService.class);
+  private RetryService sut;
+
+  @Before
+  public void before() throws ValidationException {
+    PluginSettingsFactory pluginSettingsFactory = mock(PluginSettingsFactory.class);
+    when(pluginSettingsFactory.createGlobalSettings()) //
+        .thenReturn(this.pluginSettings);
+    TransactionTemplate transactionTemplate =
+        new TransactionTemplate() {
+          @Override
+          public <T> T execute(TransactionCallback<T> action) {
+            return action.doInTransaction();
+          }
+        };
+    ClusterLockService clusterLockService = mock(ClusterLockService.class);
+    when(clusterLockService.getLockForName(anyString())) //
+        .thenReturn(this.clusterLock);
+    when(this.clusterLock.tryLock()) //
+        .thenReturn(true);
+    when(this.settingsService.getPrnfbSettingsData()) //
+        .thenReturn(prnfbSettingsDataBuilder().build());
+    this.notification = withMaxAttempts(2);
+
+    this.deliveryScheduler = deliveryScheduler(this.settingsService, new FakeExecutorService());
+    this.sut =
+        retryService(
+            pluginSettingsFactory,
+            transactionTemplate,
+            clusterLockService,
+            this.settingsService,
+            this.deliveryScheduler);
+    RetryService.setInvoker(
+        new Invoker() {
+          @Override
+          public HttpResponse invoke(UrlInvoker urlInvoker) {
+            RetryServiceTest.this.invoked.add(urlInvoker);
+            return new HttpResponse(
+                URI.create(urlInvoker.getUrlParam()), RetryServiceTest.this.responseStatus, "");
+          }
+        });
+  }
+
+  @After
+  public void after() {
+    RetryService.setInvoker(null);
+  }
+
+  private PrnfbNotification withMaxAttempts(Integer maxAttempts) throws ValidationException {
+    PrnfbNotification n =
+        prnfbNotificationBuilder() //
+            .withUrl("http://bla.com/") //
+            .withTrigger(OPENED) //
+            .withUser("user") //
+            .withPassword("password") //
+            .withRetryMaxAttempts(maxAttempts) //
+            .withRetryBackoffSeconds(10) //
+            .build();
+    when(this.settingsService.findNotification(n.getUuid())) //
+        .thenReturn(of(n));
+    return n;
+  }
+
+  private UrlInvoker failedInvocation(PrnfbNotification n) {
+    return urlInvoker() //
+        .withUrlParam("http://bla.com/?id=1") //
+        .withHeader("X-Header", "value") //
+        .appendBasicAuth(n);
+  }
+
+  private HttpResponse response(int status) {
+    return new HttpResponse(URI.create("http://bla.com/"), status, "");
+  }
+
+  @Test
+  public void testThatBackoffIsDoubledWithJitterAndCapped() {
+    Random random = new Random(1);
+    for (int i = 0; i < 100; i++) {
+      assertThat(backoffMillis(10, 1, random)).isBetween(5000L, 10000L);
+      assertThat(backoffMillis(10, 3, random)).isBetween(20000L, 40000L);
+      assertThat(backoffMillis(10, 100, random))
+          .isBetween(MAX_BACKOFF_MILLIS / 2, MAX_BACKOFF_MILLIS);
+    }
+  }
+
+  @Test
+  public void testThatSuccessIsNotRetried() {
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(204), null);
+
+    assertThat(this.sut.getPending()).isEmpty();
+  }
+
+  @Test
+  public void testThatFailureIsNotRetriedUnlessNotificationAllowsIt() throws ValidationException {
+    PrnfbNotification n = withMaxAttempts(null);
+    this.sut.retryIfFailed(n, failedInvocation(n), response(500), null);
+
+    assertThat(this.sut.getPending()).isEmpty();
+  }
+
+  @Test
+  public void testThatQueueOverflowIsNotRetried() {
+    this.sut.retryIfFailed(
+        this.notification,
+        failedInvocation(this.notification),
+        null,
+        new RejectedExecutionException("full"));
+
+    assertThat(this.sut.getPending()).isEmpty();
+  }
+
+  @Test
+  public void testThatFailureIsRetriedWhenDue() {
+    this.sut.retryIfFailed(this.notification, failedInvocation(this.notification), null, null);
+
+    List<RetryEntry> pending = this.sut.getPending();
+    assertThat(pending).hasSize(1);
+    assertThat(pending.get(0).getLastError()).isEqualTo("No response");
+    assertThat(this.pluginSettings.getPluginSettingsMap().toString()) //
+        .doesNotContain(AUTHORIZATION);
+
+    this.sut.retryDue(pending.get(0).getNextAttempt() - 1);
+    assertThat(this.invoked).isEmpty();
+
+    this.responseStatus = 200;
+    this.sut.retryDue(pending.get(0).getNextAttempt());
+    assertThat(this.invoked).hasSize(1);
+    assertThat(this.invoked.get(0).getUrlParam()).isEqualTo("http://bla.com/?id=1");
+    assertThat(this.invoked.get(0).getHeaders()).hasSize(2);
+    assertThat(this.sut.getPending()).isEmpty();
+    assertThat(this.sut.getDeadLetters()).isEmpty();
+  }
+
+  @Test
+  public void testThatFailureIsDeadLetterAfterMaxAttempts() {
+    this.responseStatus = 503;
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(500), null);
+
+    this.sut.retryDue(Long.MAX_VALUE);
+    assertThat(this.sut.getPending()).hasSize(1);
+    assertThat(this.sut.getPending().get(0).getAttempts()).isEqualTo(2);
+
+    this.sut.retryDue(Long.MAX_VALUE);
+    assertThat(this.invoked).hasSize(2);
+    assertThat(this.sut.getPending()).isEmpty();
+    List<RetryEntry> deadLetters = this.sut.getDeadLetters();
+    assertThat(deadLetters).hasSize(1);
+    assertThat(deadLetters.get(0).getAttempts()).isEqualTo(3);
+    assertThat(deadLetters.get(0).getLastError()).isEqualTo("HTTP 503");
+
+    this.sut.clearDeadLetters();
+    assertThat(this.sut.getDeadLetters()).isEmpty();
+  }
+
+  @Test
+  public void testThatDeletedNotificationIsNotRetried() {
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(500), null);
+    when(this.settingsService.findNotification(this.notification.getUuid())) //
+        .thenReturn(absent());
+
+    this.sut.retryDue(Long.MAX_VALUE);
+
+    assertThat(this.invoked).isEmpty();
+    assertThat(this.sut.getPending()).isEmpty();
+  }
+
+  @Test
+  public void testThatRejectedRetryIsKeptWithoutCountingAnAttempt() {
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(500), null);
+    this.deliveryScheduler.shutdown();
+
+    this.sut.retryDue(Long.MAX_VALUE);
+
+    assertThat(this.invoked).isEmpty();
+    List<RetryEntry> pending = this.sut.getPending();
+    assertThat(pending).hasSize(1);
+    assertThat(pending.get(0).getAttempts()).isEqualTo(1);
+    assertThat(pending.get(0).getLastError()).isEqualTo("HTTP 500");
+    assertThat(this.sut.getDeadLetters()).isEmpty();
+  }
+
+  @Test
+  public void testThatEachRetryIsStoredInItsOwnKey() {
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(500), null);
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(502), null);
+
+    List<RetryEntry> pending = this.sut.getPending();
+    assertThat(pending).hasSize(2);
+    assertThat(this.pluginSettings.get(retryStorageKey(pending.get(0).getUuid()))).isNotNull();
+    assertThat(this.pluginSettings.get(retryStorageKey(pending.get(1).getUuid()))).isNotNull();
+    assertThat(this.pluginSettings.get(RETRIES_STORAGE_KEY).toString()) //
+        .doesNotContain("bla.com");
+
+    this.responseStatus = 200;
+    this.sut.retryDue(Long.MAX_VALUE);
+    assertThat(this.pluginSettings.get(retryStorageKey(pending.get(0).getUuid()))).isNull();
+    assertThat(this.pluginSettings.get(RETRIES_STORAGE_KEY)).isNull();
+  }
+
+  @Test
+  public void testThatRetriesAreNotTakenWhenAnotherNodeHoldsTheLock() {
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(500), null);
+    when(this.clusterLock.tryLock()) //
+        .thenReturn(false);
+
+    this.sut.retryDue(Long.MAX_VALUE);
+
+    assertThat(this.invoked).isEmpty();
+    assertThat(this.sut.getPending()).hasSize(1);
+  }
+
+  @Test
+  public void testThatFailuresAreStoredHoldingTheLock() {
+    this.sut.retryIfFailed(
+        this.notification, failedInvocation(this.notification), response(500), null);
+
+    InOrder inOrder = inOrder(this.clusterLock);
+    inOrder.verify(this.clusterLock).lock();
+    inOrder.verify(this.clusterLock).unlock();
+  }
+
+  @Test
+  public void testThatLockIsReleasedAfterTakingRetries() {
+    this.sut.retryDue(Long.MAX_VALUE);
+
+    verify(this.clusterLock).unlock();
+  }
+}
@@ -4,8 +4,17 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.APPROVED;
+import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.MERGED;
+import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.OPENED;
 import static se.bjurr.prnfb.service.PrnfbRenderer.ENCODE_FOR.NONE;
+import static se.bjurr.prnfb.service.SettingsService.BUTTONS_STORAGE_KEY;
+import static se.bjurr.prnfb.service.SettingsService.NOTIFICATIONS_STORAGE_KEY;
+import static se.bjurr.prnfb.service.SettingsService.SETTINGS_DATA_STORAGE_KEY;
 import static se.bjurr.prnfb.service.SettingsService.SETTINGS_STORAGE_KEY;
+import static se.bjurr.prnfb.service.SettingsService.SETTINGS_VERSION_STORAGE_KEY;
+import static se.bjurr.prnfb.service.SettingsService.buttonStorageKey;
+import static se.bjurr.prnfb.service.SettingsService.notificationStorageKey;
+import static se.bjurr.prnfb.service.SettingsService.settingsService;
 import static se.bjurr.prnfb.settings.PrnfbNotificationBuilder.prnfbNotificationBuilder;
 import static se.bjurr.prnfb.settings.PrnfbSettingsBuilder.prnfbSettingsBuilder;
 import static se.bjurr.prnfb.settings.PrnfbSettingsDataBuilder.prnfbSettingsDataBuilder;
@@ -22,6 +31,7 @@ import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
 import com.atlassian.sal.api.transaction.TransactionCallback;
 import com.atlassian.sal.api.transaction.TransactionTemplate;
 import com.google.gson.Gson;
+import java.util.EnumSet;
 import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
@@ -61,8 +71,10 @@ public class SettingsServiceTest {
             return action.doInTransaction();
           }
         };
+    SettingsService.cachedSettings.set(null);
+    SettingsService.cachedVersion = null;
     this.sut =
-        new SettingsService(
+        settingsService(
             this.pluginSettingsFactory, this.transactionTemplate, this.securityService);
 
     this.notification1 =
@@ -217,6 +229,49 @@ public class SettingsServiceTest {
         .isEqualTo(this.notification1);
   }
 
+  @Test
+  public void testThatNotificationCandidatesCanBeRetrievedByActionProjectAndRepo()
+      throws ValidationException {
+    final PrnfbNotification global =
+        prnfbNotificationBuilder() //
+            .withUrl("http://hej.com/") //
+            .withTrigger(APPROVED) //
+            .build();
+    final PrnfbNotification otherRepo =
+        prnfbNotificationBuilder(this.notification1) //
+            .withUuid(null) //
+            .withRepositorySlug("otherRepositorySlug") //
+            .build();
+    final PrnfbNotification project =
+        prnfbNotificationBuilder(this.notification1) //
+            .withUuid(null) //
+            .withRepositorySlug(null) //
+            .build();
+    final PrnfbNotification opened =
+        prnfbNotificationBuilder() //
+            .withUrl("http://hej.com/") //
+            .withTrigger(OPENED) //
+            .build();
+    this.sut.addOrUpdateNotification(global);
+    this.sut.addOrUpdateNotification(this.notification1);
+    this.sut.addOrUpdateNotification(otherRepo);
+    this.sut.addOrUpdateNotification(project);
+    this.sut.addOrUpdateNotification(opened);
+
+    assertThat(
+            this.sut.getNotificationCandidates(
+                EnumSet.of(APPROVED), "projectKey", "repositorySlug")) //
+        .containsExactly(global, this.notification1, project);
+    assertThat(
+            this.sut.getNotificationCandidates(
+                EnumSet.of(APPROVED, OPENED), "otherProjectKey", "repositorySlug")) //
+        .containsExactly(global, opened);
+    assertThat(
+            this.sut.getNotificationCandidates(
+                EnumSet.of(MERGED), "projectKey", "repositorySlug")) //
+        .isEmpty();
+  }
+
   @Test
   public void testThatNotificationsCanBeRetrievedByUuid() throws ValidationException {
     this.sut.addOrUpdateNotification(this.notification1);
@@ -244,7 +299,6 @@ public class SettingsServiceTest {
     final String oldSettingsString = new Gson().toJson(oldSettings);
 
     this.pluginSettings.getPluginSettingsMap().put(SETTINGS_STORAGE_KEY, oldSettingsString);
-    SettingsService.nextCacheExpiry = System.currentTimeMillis() - 12435L;
 
     final PrnfbSettings newSettings =
         prnfbSettingsBuilder() //
@@ -261,9 +315,134 @@ public class SettingsServiceTest {
 
     this.sut.setPrnfbSettingsData(newSettings.getPrnfbSettingsData());
 
-    final String expectedSettingsString = new Gson().toJson(newSettings);
-    assertThat(this.pluginSettings.getPluginSettingsMap().get(SETTINGS_STORAGE_KEY)) //
+    final String expectedSettingsString = new Gson().toJson(newSettings.getPrnfbSettingsData());
+    assertThat(this.pluginSettings.getPluginSettingsMap().get(SETTINGS_DATA_STORAGE_KEY)) //
         .isEqualTo(expectedSettingsString);
+    assertThat(this.pluginSettings.getPluginSettingsMap()) //
+        .containsEntry(SETTINGS_STORAGE_KEY, oldSettingsString);
+  }
+
+  @Test
+  public void testThatEachNotificationAndButtonIsStoredInItsOwnKey() throws ValidationException {
+    final PrnfbButton button = populatedInstanceOf(PrnfbButton.class);
+    this.sut.addOrUpdateButton(button);
+    this.sut.addOrUpdateNotification(this.notification1);
+    final String storedButton =
+        this.pluginSettings.getPluginSettingsMap().get(buttonStorageKey(button.getUuid()));
+
+    final PrnfbNotification updated =
+        prnfbNotificationBuilder(this.notification1) //
+            .withUrl("http://hej2.com/") //
+            .build();
+    this.sut.addOrUpdateNotification(updated);
+
+    assertThat(this.pluginSettings.getPluginSettingsMap().get(buttonStorageKey(button.getUuid())))
+        .isSameAs(storedButton);
+    assertThat(
+            this.pluginSettings
+                .getPluginSettingsMap()
+                .get(notificationStorageKey(this.notification1.getUuid())))
+        .contains("http://hej2.com/");
+    assertThat(this.pluginSettings.getPluginSettingsMap().get(NOTIFICATIONS_STORAGE_KEY))
+        .isEqualTo("[\"" + this.notification1.getUuid() + "\"]");
+
+    this.sut.deleteButton(button.getUuid());
+    assertThat(this.pluginSettings.getPluginSettingsMap()) //
+        .doesNotContainKey(buttonStorageKey(button.getUuid()));
+    assertThat(this.pluginSettings.getPluginSettingsMap().get(BUTTONS_STORAGE_KEY)) //
+        .isEqualTo("[]");
+  }
+
+  @Test
+  public void testThatSettingsAreOnlyReadAgainWhenVersionIsChanged() throws ValidationException {
+    this.sut.addOrUpdateNotification(this.notification1);
+    final PrnfbNotification changedOnOtherNode =
+        prnfbNotificationBuilder(this.notification1) //
+            .withUrl("http://other.com/") //
+            .build();
+    this.pluginSettings
+        .getPluginSettingsMap()
+        .put(
+            notificationStorageKey(this.notification1.getUuid()),
+            new Gson().toJson(changedOnOtherNode));
+
+    this.sut.refresh();
+    assertThat(this.sut.getNotifications()) //
+        .containsExactly(this.notification1);
+
+    this.pluginSettings.getPluginSettingsMap().put(SETTINGS_VERSION_STORAGE_KEY, "other");
+    assertThat(this.sut.getNotifications()) //
+        .containsExactly(this.notification1);
+
+    this.sut.refresh();
+    assertThat(this.sut.getNotifications()) //
+        .containsExactly(changedOnOtherNode);
+  }
+
+  @Test
+  public void testThatSettingsStoredAsOneDocumentAreMigrated() throws ValidationException {
+    final PrnfbButton button = populatedInstanceOf(PrnfbButton.class);
+    final PrnfbSettings oldSettings =
+        prnfbSettingsBuilder() //
+            .setPrnfbSettingsData( //
+                prnfbSettingsDataBuilder() //
+                    .setKeyStore("12") //
+                    .build() //
+                ) //
+            .withNotification(this.notification1) //
+            .withButton(button) //
+            .build();
+    final String oldSettingsString = new Gson().toJson(oldSettings);
+    this.pluginSettings.getPluginSettingsMap().put(SETTINGS_STORAGE_KEY, oldSettingsString);
+
+    assertThat(this.sut.getPrnfbSettings()) //
+        .isEqualTo(oldSettings);
+    assertThat(this.pluginSettings.getPluginSettingsMap()) //
+        .containsEntry(SETTINGS_STORAGE_KEY, oldSettingsString) //
+        .containsKey(SETTINGS_DATA_STORAGE_KEY) //
+        .containsKey(buttonStorageKey(button.getUuid())) //
+        .containsKey(notificationStorageKey(this.notification1.getUuid()));
+
+    SettingsService.cachedSettings.set(null);
+    assertThat(this.sut.getPrnfbSettings()) //
+        .isEqualTo(oldSettings);
+  }
+
+  @Test
+  public void testThatSettingsAreOnlyMigratedOnce() throws ValidationException {
+    final PrnfbSettings oldSettings =
+        prnfbSettingsBuilder() //
+            .withNotification(this.notification1) //
+            .build();
+    this.pluginSettings
+        .getPluginSettingsMap()
+        .put(SETTINGS_STORAGE_KEY, new Gson().toJson(oldSettings));
+    assertThat(this.sut.getNotifications()) //
+        .containsExactly(this.notification1);
+
+    this.sut.deleteNotification(this.notification1.getUuid());
+    SettingsService.cachedSettings.set(null);
+
+    assertThat(this.sut.getNotifications()) //
+        .isEmpty();
+    assertThat(this.pluginSettings.getPluginSettingsMap()) //
+        .containsKey(SETTINGS_STORAGE_KEY);
+  }
+
+  @Test
+  public void testThatSettingsStoredAsOneDocumentWithoutDataAreMigrated() {
+    this.pluginSettings
+        .getPluginSettingsMap()
+        .put(
+            SETTINGS_STORAGE_KEY,
+            "{\"notifications\":[" + new Gson().toJson(this.notification1) + "]}");
+
+    assertThat(this.sut.getNotifications()) //
+        .containsExactly(this.notification1);
+    assertThat(this.pluginSettings.getPluginSettingsMap()) //
+        .containsKey(SETTINGS_STORAGE_KEY) //
+        .containsKey(SETTINGS_DATA_STORAGE_KEY) //
+        .containsKey(notificationStorageKey(this.notification1.getUuid()));
   }
 
   @Test
@@ -282,7 +461,6 @@ public class SettingsServiceTest {
             .build();
     final String oldSettingsString = new Gson().toJson(oldSettings);
     this.pluginSettings.getPluginSettingsMap().put(SETTINGS_STORAGE_KEY, oldSettingsString);
-    SettingsService.nextCacheExpiry = System.currentTimeMillis() - 12435L;
 
     final PrnfbSettings actual = this.sut.getPrnfbSettings();
 
@@ -304,7 +482,6 @@ public class SettingsServiceTest {
   @Test
   public void testThatSettingsCanBeReadWhenNoneAreSaved() {
     this.pluginSettings.getPluginSettingsMap().put(SETTINGS_STORAGE_KEY, null);
-    SettingsService.nextCacheExpiry = System.currentTimeMillis() - 12435L;
 
     final PrnfbSettings actual = this.sut.getPrnfbSettings();
     assertThat(actual) //
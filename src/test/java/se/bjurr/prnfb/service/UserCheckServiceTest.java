@@ -1,7 +1,11 @@
 package se.bjurr.prnfb.service;
 
+import static com.atlassian.bitbucket.permission.Permission.PROJECT_ADMIN;
+import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static se.bjurr.prnfb.settings.USER_LEVEL.ADMIN;
@@ -10,6 +14,7 @@ import static se.bjurr.prnfb.settings.USER_LEVEL.SYSTEM_ADMIN;
 
 import com.atlassian.bitbucket.permission.Permission;
 import com.atlassian.bitbucket.permission.PermissionService;
+import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.project.ProjectService;
 import com.atlassian.bitbucket.repository.RepositoryService;
 import com.atlassian.bitbucket.user.EscalatedSecurityContext;
@@ -19,6 +24,7 @@ import com.atlassian.sal.api.user.UserKey;
 import com.atlassian.sal.api.user.UserManager;
 import com.atlassian.sal.api.user.UserProfile;
 import com.google.common.base.Optional;
+import java.util.List;
 import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
@@ -105,6 +111,64 @@ public class UserCheckServiceTest {
     assertThat(actual).isFalse();
   }
 
+  @Test
+  public void testThatAllowedIsCachedUntilPermissionsAreChanged() {
+    final UserProfile remoteUser = mock(UserProfile.class);
+    when(remoteUser.getUserKey()).thenReturn(userKey);
+    when(userManager.getRemoteUser()).thenReturn(remoteUser);
+    when(userManager.isAdmin(userKey)).thenReturn(true);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(this.sut.isAllowed(ADMIN, null, null)) //
+          .isTrue();
+    }
+    verify(userManager, times(1)).isAdmin(userKey);
+
+    when(userManager.isAdmin(userKey)).thenReturn(false);
+    this.sut.onPermissionEvent(null);
+
+    assertThat(this.sut.isAllowed(ADMIN, null, null)) //
+        .isFalse();
+    verify(userManager, times(2)).isAdmin(userKey);
+  }
+
+  @Test
+  public void testThatAllowedIsResolvedOncePerProject() {
+    final UserProfile remoteUser = mock(UserProfile.class);
+    when(remoteUser.getUserKey()).thenReturn(userKey);
+    when(userManager.getRemoteUser()).thenReturn(remoteUser);
+    final Project allowedProject = mock(Project.class);
+    final Project deniedProject = mock(Project.class);
+    when(projectService.getByKey("allowed")).thenReturn(allowedProject);
+    when(projectService.getByKey("denied")).thenReturn(deniedProject);
+    when(permissionService.hasProjectPermission(allowedProject, PROJECT_ADMIN)).thenReturn(true);
+    final Restricted first = restricted("allowed");
+    final Restricted second = restricted("denied");
+    final Restricted third = restricted("allowed");
+
+    final List<Restricted> actual =
+        this.sut.filterAllowed(ADMIN, newArrayList(first, second, third));
+
+    assertThat(actual) //
+        .containsExactly(first, third);
+    verify(permissionService, times(1)).hasProjectPermission(allowedProject, PROJECT_ADMIN);
+    verify(permissionService, times(1)).hasProjectPermission(deniedProject, PROJECT_ADMIN);
+  }
+
+  private Restricted restricted(String projectKey) {
+    return new Restricted() {
+      @Override
+      public Optional<String> getRepositorySlug() {
+        return Optional.absent();
+      }
+
+      @Override
+      public Optional<String> getProjectKey() {
+        return Optional.of(projectKey);
+      }
+    };
+  }
+
   @Test
   public void testThatAllowedCanBeChecked() {
     assertThat(this.sut.isAllowed(ADMIN, true, false)) //
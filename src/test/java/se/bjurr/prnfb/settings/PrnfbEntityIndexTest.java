@@ -0,0 +1,46 @@
+package se.bjurr.prnfb.settings;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.OPENED;
+import static se.bjurr.prnfb.settings.PrnfbNotificationBuilder.prnfbNotificationBuilder;
+
+import java.util.UUID;
+import org.junit.Test;
+
+public class PrnfbEntityIndexTest {
+
+  private PrnfbNotification notification(String projectKey, String repositorySlug)
+      throws ValidationException {
+    return prnfbNotificationBuilder() //
+        .withUrl("http://hej.com/") //
+        .withTrigger(OPENED) //
+        .withProjectKey(projectKey) //
+        .withRepositorySlug(repositorySlug) //
+        .build();
+  }
+
+  @Test
+  public void testThatEntitiesCanBeFoundByUuidProjectAndRepository() throws ValidationException {
+    PrnfbNotification global = notification(null, null);
+    PrnfbNotification project = notification("p1", null);
+    PrnfbNotification repository = notification("p1", "r1");
+    PrnfbNotification otherRepository = notification("p1", "r2");
+    PrnfbNotification otherProject = notification("p2", "r1");
+
+    PrnfbEntityIndex<PrnfbNotification> sut =
+        new PrnfbEntityIndex<>(
+            newArrayList(global, project, repository, otherRepository, otherProject));
+
+    assertThat(sut.find(global.getUuid()).get()) //
+        .isSameAs(global);
+    assertThat(sut.find(UUID.randomUUID()).isPresent()) //
+        .isFalse();
+    assertThat(sut.findByProject("p1")) //
+        .containsExactly(project, repository, otherRepository);
+    assertThat(sut.findByRepository("p1", "r1")) //
+        .containsExactly(repository);
+    assertThat(sut.findByRepository("p3", "r1")) //
+        .isEmpty();
+  }
+}
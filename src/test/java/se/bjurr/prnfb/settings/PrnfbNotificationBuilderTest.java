@@ -1,6 +1,8 @@
 package se.bjurr.prnfb.settings;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static se.bjurr.prnfb.listener.PrnfbPullRequestAction.APPROVED;
 import static se.bjurr.prnfb.settings.PrnfbNotificationBuilder.prnfbNotificationBuilder;
 import static se.bjurr.prnfb.test.Podam.populatedInstanceOf;
 
@@ -18,4 +20,38 @@ public class PrnfbNotificationBuilderTest {
     final PrnfbNotification built = builder.build();
     assertThat(built).isEqualTo(original);
   }
+
+  @Test
+  public void testThatRegexpsAreCompiledWhenBuilt() throws ValidationException {
+    final PrnfbNotification built =
+        prnfbNotificationBuilder() //
+            .withUrl("http://bjurr.com/") //
+            .withTrigger(APPROVED) //
+            .withFilterString("${PULL_REQUEST_FROM_BRANCH}") //
+            .withFilterRegexp(" ^feature ") //
+            .withVariableRegex("(?:hello)-(.+)") //
+            .build();
+
+    assertThat(built.getFilterPattern().get().pattern()) //
+        .isEqualTo("^feature");
+    assertThat(built.getVariablePattern().get().pattern()) //
+        .isEqualTo("(?:hello)-(.+)");
+    assertThat(built.getInjectionUrlPattern().isPresent()) //
+        .isFalse();
+  }
+
+  @Test
+  public void testThatInvalidVariableRegexIsRejected() {
+    try {
+      prnfbNotificationBuilder() //
+          .withUrl("http://bjurr.com/") //
+          .withTrigger(APPROVED) //
+          .withVariableRegex("(unclosed") //
+          .build();
+      fail("Expected validation to fail");
+    } catch (final ValidationException e) {
+      assertThat(e.getField()) //
+          .isEqualTo("variable_regex");
+    }
+  }
 }